@@ -0,0 +1,151 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.FileSystemResultsWriter;
+import io.qameta.allure.model.TestResult;
+import io.qameta.allure.model.TestResultContainer;
+import io.qameta.allure.util.PropertiesUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allure results writer which hands finished test results and containers to a single background
+ * thread, so test threads do not wait for serialization and file I/O. The background thread writes
+ * every result to its own file with {@link FileSystemResultsWriter}, as the synchronous writer does.
+ * When the queue is full the producing test thread waits.
+ */
+public class AsyncResultsWriter extends FileSystemResultsWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncResultsWriter.class);
+    private static final int BATCH_SIZE = 64;
+    private static AsyncResultsWriter instance;
+    private final BlockingQueue<Object> queue;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public AsyncResultsWriter(Path outputDirectory, int capacity) {
+        super(outputDirectory);
+        queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        Thread writer = new Thread(this::writeLoop, "uitaf-allure-results-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(TimeUnit.SECONDS.toMillis(30)),
+                "uitaf-allure-results-writer-shutdown"));
+    }
+
+    /**
+     * Returns Allure lifecycle, installing asynchronous results writer first when
+     * {@code report.results.async} is enabled.
+     */
+    public static synchronized AllureLifecycle getLifecycle() {
+        TestProperties props = TestContext.getTestProperties();
+        if (instance == null && props.isResultsAsync()) {
+            String folder = PropertiesUtils.loadAllureProperties()
+                    .getProperty("allure.results.directory", "allure-results");
+            instance = new AsyncResultsWriter(Paths.get(folder), props.getResultsQueueSize());
+            Allure.setLifecycle(new AllureLifecycle(instance));
+        }
+        return Allure.getLifecycle();
+    }
+
+    /**
+     * Waits until all queued results are written to the results folder.
+     */
+    public static void flushPending() {
+        AsyncResultsWriter writer;
+        synchronized (AsyncResultsWriter.class) {
+            writer = instance;
+        }
+        if (writer != null) {
+            writer.flush(TimeUnit.MINUTES.toMillis(1));
+        }
+    }
+
+    @Override
+    public void write(TestResult testResult) {
+        enqueue(testResult);
+    }
+
+    @Override
+    public void write(TestResultContainer testResultContainer) {
+        enqueue(testResultContainer);
+    }
+
+    private void enqueue(Object result) {
+        pending.incrementAndGet();
+        try {
+            queue.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.decrementAndGet();
+            writeResult(result);
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            batch.forEach(this::writeResult);
+            if (pending.addAndGet(-batch.size()) == 0) {
+                synchronized (pending) {
+                    pending.notifyAll();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeResult(Object result) {
+        try {
+            if (result instanceof TestResult) {
+                super.write((TestResult) result);
+            } else {
+                super.write((TestResultContainer) result);
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to write Allure result", e);
+        }
+    }
+
+    public void flush(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (pending) {
+            long wait;
+            while (pending.get() > 0 && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    pending.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
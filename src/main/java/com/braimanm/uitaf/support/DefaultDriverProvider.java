@@ -17,6 +17,7 @@ import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.ios.IOSDriver;
 import io.qameta.allure.internal.shadowed.jackson.core.JsonProcessingException;
 import io.qameta.allure.internal.shadowed.jackson.databind.ObjectMapper;
+import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.Proxy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
@@ -26,17 +27,24 @@ import org.openqa.selenium.edge.EdgeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxOptions;
 import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.CommandExecutor;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.HttpCommandExecutor;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariDriver;
 import org.openqa.selenium.safari.SafariOptions;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings("unused")
 public class DefaultDriverProvider implements DriverProvider {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<String, Map<String, Object>> APPIUM_CONFIGS = new ConcurrentHashMap<>();
 
     protected Proxy setupWebDriverProxy() {
         TestProperties prop = TestContext.getTestProperties();
@@ -62,6 +70,50 @@ public class DefaultDriverProvider implements DriverProvider {
         }
     }
 
+    /**
+     * Creates remote session, when {@code webdriver.remote.url} lists several comma separated grid endpoints
+     * the session is started on the least loaded healthy endpoint. A single endpoint uses the default Selenium
+     * HTTP client unless {@code webdriver.remote.*} client settings are configured.
+     */
+    protected WebDriver createRemoteDriver(String remoteUrl, Capabilities capabilities) {
+        if (!remoteUrl.contains(",")) {
+            URL url = getRemoteUrl(remoteUrl);
+            if (!RemoteHttpClients.isConfigured(TestContext.getTestProperties())) {
+                return new RemoteWebDriver(url, capabilities);
+            }
+            return new RemoteWebDriver(createCommandExecutor(url), capabilities);
+        }
+        GridBalancer.Slot slot = GridBalancer.getInstance(remoteUrl, TestContext.getTestProperties()).acquire();
+        WebDriver driver;
+        RemoteHttpClients.takeLastStatus();
+        try {
+            driver = new RemoteWebDriver(createCommandExecutor(slot.getUrl()), capabilities) {
+                @Override
+                public void quit() {
+                    try {
+                        super.quit();
+                    } finally {
+                        slot.release();
+                    }
+                }
+            };
+        } catch (RuntimeException e) {
+            slot.failed(e, RemoteHttpClients.takeLastStatus());
+            throw e;
+        }
+        slot.started();
+        return driver;
+    }
+
+    /**
+     * Creates command executor using the shared HTTP client configured by the {@code webdriver.remote.*} properties.
+     */
+    protected CommandExecutor createCommandExecutor(URL url) {
+        TestProperties prop = TestContext.getTestProperties();
+        return new HttpCommandExecutor(Collections.emptyMap(), RemoteHttpClients.getConfig(url, prop),
+                RemoteHttpClients.getFactory(prop));
+    }
+
     protected void addScreenSize(TestProperties prop, Object options) {
         String res = prop.getScreenSize();
         if (res != null) {
@@ -77,14 +129,19 @@ public class DefaultDriverProvider implements DriverProvider {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parseAppiumConfig(String json) {
+        return APPIUM_CONFIGS.computeIfAbsent(json, key -> {
+            try {
+                return Collections.unmodifiableMap(MAPPER.readValue(key, Map.class));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
     protected static WebDriver createAppiumDriver(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, Object> config;
-        try {
-            config = mapper.readValue(json, Map.class);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        Map<String, Object> config = new LinkedHashMap<>(parseAppiumConfig(json));
 
         // Extract and remove server URL from config
         String appiumServerUrl = (String) config.remove("appiumServerUrl");
@@ -105,13 +162,46 @@ public class DefaultDriverProvider implements DriverProvider {
             throw new RuntimeException(e);
         }
 
-        if ("iOS".equalsIgnoreCase(platformName)) {
-            return new IOSDriver(serverUrl, capabilities);
-        } else if ("Android".equalsIgnoreCase(platformName)) {
-            return new AndroidDriver(serverUrl, capabilities);
-        } else {
+        if (!"iOS".equalsIgnoreCase(platformName) && !"Android".equalsIgnoreCase(platformName)) {
             throw new IllegalArgumentException("Unsupported platform: " + platformName);
         }
+        DevicePool devices = DevicePool.getInstance(TestContext.getTestProperties());
+        if (devices == null) {
+            if ("iOS".equalsIgnoreCase(platformName)) {
+                return new IOSDriver(serverUrl, capabilities);
+            }
+            return new AndroidDriver(serverUrl, capabilities);
+        }
+
+        DevicePool.Lease lease = devices.acquire();
+        capabilities.setCapability(devices.getCapability(), lease.getDevice());
+        try {
+            if ("iOS".equalsIgnoreCase(platformName)) {
+                return new IOSDriver(serverUrl, capabilities) {
+                    @Override
+                    public void quit() {
+                        try {
+                            super.quit();
+                        } finally {
+                            lease.release();
+                        }
+                    }
+                };
+            }
+            return new AndroidDriver(serverUrl, capabilities) {
+                @Override
+                public void quit() {
+                    try {
+                        super.quit();
+                    } finally {
+                        lease.release();
+                    }
+                }
+            };
+        } catch (RuntimeException e) {
+            lease.release();
+            throw e;
+        }
     }
 
     @Override
@@ -132,7 +222,7 @@ public class DefaultDriverProvider implements DriverProvider {
                 if (headless) firefoxOptions.addArguments("-headless");
                 addScreenSize(prop, firefoxOptions);
                 if (isRemote) {
-                    return new RemoteWebDriver(getRemoteUrl(remoteUrl), firefoxOptions);
+                    return createRemoteDriver(remoteUrl, firefoxOptions);
                 } else {
                     return new FirefoxDriver(firefoxOptions);
                 }
@@ -147,7 +237,7 @@ public class DefaultDriverProvider implements DriverProvider {
                 }
                 addScreenSize(prop, chromeOptions);
                 if (isRemote) {
-                    return new RemoteWebDriver(getRemoteUrl(remoteUrl), chromeOptions);
+                    return createRemoteDriver(remoteUrl, chromeOptions);
                 } else {
                     return new ChromeDriver(chromeOptions);
                 }
@@ -157,7 +247,7 @@ public class DefaultDriverProvider implements DriverProvider {
                 if (proxy != null) safariOptions.setProxy(proxy);
                 if (acceptSSLCerts) safariOptions.setCapability(CapabilityType.ACCEPT_INSECURE_CERTS, true);
                 if (isRemote) {
-                    return new RemoteWebDriver(getRemoteUrl(remoteUrl), safariOptions);
+                    return createRemoteDriver(remoteUrl, safariOptions);
                 } else {
                     return new SafariDriver(safariOptions);
                 }
@@ -171,7 +261,7 @@ public class DefaultDriverProvider implements DriverProvider {
                 }
                 addScreenSize(prop, edgeOptions);
                 if (isRemote) {
-                    return new RemoteWebDriver(getRemoteUrl(remoteUrl), edgeOptions);
+                    return createRemoteDriver(remoteUrl, edgeOptions);
                 } else {
                     return new EdgeDriver(edgeOptions);
                 }
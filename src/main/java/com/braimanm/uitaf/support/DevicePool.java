@@ -0,0 +1,103 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of the mobile devices listed in {@code webdriver.appium.devices}. Every Appium session leases
+ * one device, which is set as the {@code webdriver.appium.device.capability} capability, and returns
+ * it when the session is closed. A thread gets the device it used last when that device is free, so
+ * a worker thread keeps working with the same device for the whole run.
+ */
+class DevicePool {
+    private static DevicePool instance;
+    private final Deque<String> free = new ArrayDeque<>();
+    private final ThreadLocal<String> lastDevice = new ThreadLocal<>();
+    private final String capability;
+    private final long timeout;
+
+    private DevicePool(TestProperties props) {
+        for (String device : props.getAppiumDevices().split(",")) {
+            if (!device.trim().isEmpty()) free.add(device.trim());
+        }
+        capability = props.getAppiumDeviceCapability();
+        timeout = TimeUnit.SECONDS.toMillis(props.getAppiumDeviceTimeout());
+    }
+
+    /**
+     * @return device pool or null when {@code webdriver.appium.devices} is not set
+     */
+    static synchronized DevicePool getInstance(TestProperties props) {
+        if (instance == null && props.getAppiumDevices() != null && !props.getAppiumDevices().trim().isEmpty()) {
+            instance = new DevicePool(props);
+        }
+        return instance;
+    }
+
+    String getCapability() {
+        return capability;
+    }
+
+    synchronized Lease acquire() {
+        long deadline = System.currentTimeMillis() + timeout;
+        long wait;
+        while (free.isEmpty()) {
+            if ((wait = deadline - System.currentTimeMillis()) <= 0) {
+                throw new RuntimeException("No device became available within " + timeout / 1000
+                        + " seconds, please add more devices to webdriver.appium.devices");
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for device", e);
+            }
+        }
+        String device = lastDevice.get();
+        if (device == null || !free.remove(device)) {
+            device = free.pollFirst();
+        }
+        lastDevice.set(device);
+        return new Lease(device);
+    }
+
+    private synchronized void release(String device) {
+        free.addFirst(device);
+        notifyAll();
+    }
+
+    class Lease {
+        private final String device;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String device) {
+            this.device = device;
+        }
+
+        String getDevice() {
+            return device;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                DevicePool.this.release(device);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of WebDriver instances started at the same time across all the suites running
+ * in the JVM. A slot is taken before the driver is created and given back when the browser is quit,
+ * so drivers which are still starting, pre-warmed and pooled drivers count against the limit as well.
+ * While no slot is free idle drivers are reclaimed (quit) to make room.
+ * <p>
+ * With {@code webdriver.admission.adaptive} the limit moves between {@code webdriver.max.active.min}
+ * and {@code webdriver.max.active}: it never exceeds the number of drivers which fit in the available
+ * memory, shrinks by one while the load average per core or the driver startup time is too high
+ * and grows otherwise. The limit starts at {@code webdriver.max.active.min} and doubles until the
+ * first overload, then grows by one. The limit is re-evaluated at most every two seconds.
+ */
+class DriverLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverLimiter.class);
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+    private static final long ADJUST_INTERVAL = 2000;
+    private static final double LATENCY_FACTOR = 3;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final long timeout;
+    private final boolean adaptive;
+    private final int floor;
+    private final int ceiling;
+    private final long driverMemory;
+    private final double maxLoad;
+    private final BooleanSupplier reclaim;
+    private int limit;
+    private int active;
+    private boolean rampUp = true;
+    private long lastAdjusted;
+    private double latency = -1;
+    private double baseline = -1;
+
+    DriverLimiter(TestProperties props, BooleanSupplier reclaim) {
+        this.reclaim = reclaim;
+        timeout = TimeUnit.SECONDS.toMillis(props.getMaxActiveTimeout());
+        adaptive = props.isAdmissionAdaptive();
+        ceiling = (props.getMaxActiveDrivers() > 0) ? props.getMaxActiveDrivers() : os.getAvailableProcessors();
+        floor = Math.max(1, Math.min(ceiling, props.getMinActiveDrivers()));
+        driverMemory = Math.max(1, props.getAdmissionDriverMemory()) * 1024L * 1024L;
+        maxLoad = props.getAdmissionMaxLoad();
+        limit = adaptive ? floor : ceiling;
+    }
+
+    WebDriver open(String key, Supplier<WebDriver> factory) {
+        acquire();
+        WebDriver driver;
+        try {
+            driver = factory.get();
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+        return new DriverSession(driver, key, session -> {
+            try {
+                session.getDriver().quit();
+            } finally {
+                release();
+            }
+        }).getProxy();
+    }
+
+    /**
+     * Records how long it took the driver provider to start a new driver.
+     * @param millis - startup time in milliseconds
+     */
+    synchronized void recordStartup(long millis) {
+        latency = (latency < 0) ? millis : 0.3 * millis + 0.7 * latency;
+        baseline = (baseline < 0) ? millis : Math.min(baseline, millis);
+    }
+
+    private void acquire() {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!tryAcquire()) {
+            if (!reclaim.getAsBoolean()) {
+                await(deadline);
+            }
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        adjust();
+        if (active >= limit) return false;
+        active++;
+        return true;
+    }
+
+    private synchronized void await(long deadline) {
+        if (active < limit) return;
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+            throw new RuntimeException("No WebDriver slot became available within " + timeout / 1000
+                    + " seconds, " + active + " of " + limit + " drivers are in use");
+        }
+        try {
+            wait(Math.min(wait, ADJUST_INTERVAL));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for WebDriver slot", e);
+        }
+    }
+
+    private synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    private void adjust() {
+        long now = System.currentTimeMillis();
+        if (!adaptive || now - lastAdjusted < ADJUST_INTERVAL) return;
+        lastAdjusted = now;
+        int target = ceiling;
+        long available = availableMemory();
+        if (available >= 0) {
+            target = (int) Math.min(target, active + available / driverMemory);
+        }
+        double load = os.getSystemLoadAverage() / os.getAvailableProcessors();
+        boolean overloaded = (load > maxLoad) || (baseline > 0 && latency > baseline * LATENCY_FACTOR);
+        rampUp &= !overloaded;
+        int adjusted = overloaded ? limit - 1 : limit + (rampUp ? limit : 1);
+        adjusted = Math.max(floor, Math.min(target, Math.min(ceiling, adjusted)));
+        if (adjusted != limit) {
+            LOG.debug("WebDriver limit changed from {} to {} (active: {}, memory: {} MB, load: {}, startup: {} ms)",
+                    limit, adjusted, active, available / 1024 / 1024, load, (long) latency);
+            limit = adjusted;
+        }
+    }
+
+    private long availableMemory() {
+        try {
+            if (Files.isReadable(MEMINFO)) {
+                for (String line : Files.readAllLines(MEMINFO)) {
+                    if (line.startsWith("MemAvailable:")) {
+                        return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOG.debug("Unable to read " + MEMINFO, e);
+        }
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of ready WebDriver sessions keyed by {@link TestProperties#getDriverFingerprint()}.
+ * Drivers are borrowed in {@link TestContext#init(String)} and returned to the pool when the
+ * context is closed. Sessions are recycled after max age or max uses and evicted when idle.
+ */
+public class DriverPool {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverPool.class);
+    private final Map<String, Deque<DriverSession>> idle = new HashMap<>();
+    private final Function<TestProperties, WebDriver> factory;
+    private final int maxIdle;
+    private final long idleTimeout;
+    private final long maxAge;
+    private final int maxUses;
+    private final ScheduledExecutorService evictor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private int idleCount = 0;
+    private boolean closed = false;
+
+    DriverPool(TestProperties props, Function<TestProperties, WebDriver> factory) {
+        this.factory = factory;
+        this.maxIdle = props.getDriverPoolSize();
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(props.getDriverPoolIdleTimeout());
+        this.maxAge = TimeUnit.SECONDS.toMillis(props.getDriverPoolMaxAge());
+        this.maxUses = props.getDriverPoolMaxUses();
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "uitaf-driver-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeout / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "uitaf-driver-pool-shutdown"));
+    }
+
+    public WebDriver borrow(TestProperties props) {
+        String key = props.getDriverFingerprint();
+        DriverSession session;
+        while ((session = poll(key)) != null) {
+            if (isExpired(session)) {
+                recycled.incrementAndGet();
+                session.quit();
+                continue;
+            }
+            hits.incrementAndGet();
+            session.borrowed();
+            return session.getProxy();
+        }
+        misses.incrementAndGet();
+        session = new DriverSession(factory.apply(props), key, this::release);
+        session.borrowed();
+        return session.getProxy();
+    }
+
+    private synchronized DriverSession poll(String key) {
+        Deque<DriverSession> sessions = idle.get(key);
+        if (sessions == null || sessions.isEmpty()) return null;
+        idleCount--;
+        return sessions.pollFirst();
+    }
+
+    private void release(DriverSession session) {
+        if (isExpired(session) || !SessionRecycler.reset(session.getDriver())) {
+            recycled.incrementAndGet();
+            session.quit();
+            return;
+        }
+        session.released();
+        if (!offer(session)) {
+            session.quit();
+        }
+    }
+
+    private synchronized boolean offer(DriverSession session) {
+        if (closed || idleCount >= maxIdle) return false;
+        idle.computeIfAbsent(session.getKey(), k -> new ArrayDeque<>()).offerFirst(session);
+        idleCount++;
+        return true;
+    }
+
+    private boolean isExpired(DriverSession session) {
+        return (maxAge > 0 && session.getAge() >= maxAge) || (maxUses > 0 && session.getUses() >= maxUses);
+    }
+
+    private void evictIdle() {
+        List<DriverSession> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<DriverSession> sessions : idle.values()) {
+                Iterator<DriverSession> it = sessions.iterator();
+                while (it.hasNext()) {
+                    DriverSession session = it.next();
+                    if (session.getIdleTime() >= idleTimeout || isExpired(session)) {
+                        it.remove();
+                        idleCount--;
+                        expired.add(session);
+                    }
+                }
+            }
+        }
+        evicted.addAndGet(expired.size());
+        expired.forEach(DriverSession::quit);
+    }
+
+    /**
+     * Quits the idle session which was released first, so its driver slot can be used by another fingerprint.
+     * @return true if a session was quit
+     */
+    boolean evictOldest() {
+        DriverSession oldest = null;
+        synchronized (this) {
+            for (Deque<DriverSession> sessions : idle.values()) {
+                DriverSession last = sessions.peekLast();
+                if (last != null && (oldest == null || last.getIdleTime() > oldest.getIdleTime())) {
+                    oldest = last;
+                }
+            }
+            if (oldest == null) return false;
+            idle.get(oldest.getKey()).remove(oldest);
+            idleCount--;
+        }
+        evicted.incrementAndGet();
+        oldest.quit();
+        return true;
+    }
+
+    public void shutdown() {
+        List<DriverSession> sessions = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            idle.values().forEach(sessions::addAll);
+            idle.clear();
+            idleCount = 0;
+        }
+        evictor.shutdownNow();
+        sessions.forEach(DriverSession::quit);
+        LOG.info("WebDriver pool closed: " + this);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRecycled() {
+        return recycled.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", recycled=" + recycled + ", evicted=" + evicted +
+                ", idle=" + getIdleCount();
+    }
+}
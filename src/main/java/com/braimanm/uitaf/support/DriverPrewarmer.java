@@ -0,0 +1,135 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Creates WebDriver instances ahead of time on a background executor. Pre-warmed drivers are queued by
+ * driver fingerprint and shared by all the threads, every thread taking drivers with a fingerprint keeps
+ * up to {@code webdriver.prewarm.depth} drivers started ahead for it, so the following test does not wait
+ * for the browser session to be created. Drivers left by threads which are gone are taken by the next ones.
+ */
+public class DriverPrewarmer {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverPrewarmer.class);
+    private final ConcurrentMap<String, Deque<CompletableFuture<WebDriver>>> warm = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Thread>> takers = new ConcurrentHashMap<>();
+    private final Function<TestProperties, WebDriver> factory;
+    private final int depth;
+    private final ExecutorService executor;
+
+    DriverPrewarmer(int depth, Function<TestProperties, WebDriver> factory) {
+        this.depth = depth;
+        this.factory = factory;
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "uitaf-driver-prewarm");
+            t.setDaemon(true);
+            return t;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::discardAll, "uitaf-driver-prewarm-shutdown"));
+    }
+
+    public WebDriver take(TestProperties props) {
+        String key = props.getDriverFingerprint();
+        Deque<CompletableFuture<WebDriver>> queue = warm.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        Set<Thread> threads = takers.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+        threads.add(Thread.currentThread());
+        threads.removeIf(thread -> !thread.isAlive());
+        WebDriver driver = null;
+        CompletableFuture<WebDriver> next;
+        while (driver == null && (next = queue.pollFirst()) != null) {
+            try {
+                driver = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                discard(next);
+                break;
+            } catch (ExecutionException e) {
+                LOG.warn("Pre-warmed driver creation failed, trying next one", e.getCause());
+            }
+        }
+        if (driver == null) {
+            driver = factory.apply(props);
+        }
+        synchronized (queue) {
+            while (queue.size() < depth * threads.size()) {
+                queue.addLast(CompletableFuture.supplyAsync(() -> create(props), executor));
+            }
+        }
+        return driver;
+    }
+
+    private WebDriver create(TestProperties props) {
+        return TestContext.withTestProperties(props, () -> factory.apply(props));
+    }
+
+    private void discard(CompletableFuture<WebDriver> warmDriver) {
+        warmDriver.whenComplete((driver, e) -> {
+            if (driver != null) {
+                try {
+                    driver.quit();
+                } catch (Exception ignore) {
+                    //Browser is already gone
+                }
+            }
+        });
+    }
+
+    /**
+     * Quits one started driver of a fingerprint which is not taken by any running thread anymore,
+     * so its driver slot can be used by another fingerprint.
+     * @return true if a driver was quit
+     */
+    boolean discardUnclaimed() {
+        for (Map.Entry<String, Deque<CompletableFuture<WebDriver>>> entry : warm.entrySet()) {
+            Set<Thread> threads = takers.get(entry.getKey());
+            if (threads != null) {
+                threads.removeIf(thread -> !thread.isAlive());
+                if (!threads.isEmpty()) continue;
+            }
+            for (CompletableFuture<WebDriver> next : entry.getValue()) {
+                if (next.isDone() && !next.isCompletedExceptionally() && entry.getValue().remove(next)) {
+                    discard(next);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Quits all pre-warmed drivers which were not used by any test.
+     */
+    public void discardAll() {
+        List<CompletableFuture<WebDriver>> unused = new ArrayList<>();
+        for (Deque<CompletableFuture<WebDriver>> queue : warm.values()) {
+            CompletableFuture<WebDriver> next;
+            while ((next = queue.pollFirst()) != null) {
+                unused.add(next);
+            }
+        }
+        takers.clear();
+        unused.forEach(this::discard);
+    }
+}
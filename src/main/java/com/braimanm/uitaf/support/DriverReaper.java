@@ -0,0 +1,131 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.service.DriverCommandExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Quits WebDriver instances on a bounded background executor so the test thread does not wait for
+ * the browser to close. Local driver processes which did not exit within {@code webdriver.quit.timeout}
+ * seconds are killed together with their child browser processes.
+ */
+public class DriverReaper {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverReaper.class);
+    private final Map<WebDriver, Optional<ProcessHandle>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final long quitTimeout;
+    private final long drainTimeout;
+
+    DriverReaper(TestProperties props) {
+        int threads = Math.max(1, props.getQuitThreads());
+        quitTimeout = TimeUnit.SECONDS.toMillis(props.getQuitTimeout());
+        drainTimeout = TimeUnit.SECONDS.toMillis(props.getQuitDrainTimeout());
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 8), daemon("uitaf-driver-reaper"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        watchdog = Executors.newSingleThreadScheduledExecutor(daemon("uitaf-driver-reaper-watchdog"));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "uitaf-driver-reaper-shutdown"));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    void reap(DriverSession session) {
+        reap(session.getDriver());
+    }
+
+    public void reap(WebDriver driver) {
+        inFlight.put(driver, findDriverProcess(driver));
+        executor.execute(() -> quit(driver));
+    }
+
+    private void quit(WebDriver driver) {
+        Optional<ProcessHandle> process = inFlight.getOrDefault(driver, Optional.empty());
+        ScheduledFuture<?> kill = watchdog.schedule(() -> kill(process), quitTimeout, TimeUnit.MILLISECONDS);
+        try {
+            driver.quit();
+        } catch (Exception e) {
+            LOG.debug("WebDriver quit failed", e);
+            kill(process);
+        } finally {
+            kill.cancel(false);
+            inFlight.remove(driver);
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits up to {@code webdriver.quit.drain.timeout} seconds for pending quits,
+     * then kills the driver processes which are still running.
+     */
+    public void drain() {
+        long deadline = System.currentTimeMillis() + drainTimeout;
+        synchronized (inFlight) {
+            long wait;
+            while (!inFlight.isEmpty() && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    inFlight.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (!inFlight.isEmpty()) {
+            LOG.warn("Killing " + inFlight.size() + " WebDriver processes which did not quit in time");
+            inFlight.values().forEach(this::kill);
+        }
+    }
+
+    private void kill(Optional<ProcessHandle> process) {
+        process.filter(ProcessHandle::isAlive).ifPresent(handle -> {
+            handle.descendants().forEach(ProcessHandle::destroyForcibly);
+            handle.destroyForcibly();
+        });
+    }
+
+    private static Optional<ProcessHandle> findDriverProcess(WebDriver driver) {
+        try {
+            driver = DriverSession.unwrap(driver);
+            if (!(driver instanceof RemoteWebDriver)) return Optional.empty();
+            Object executor = ((RemoteWebDriver) driver).getCommandExecutor();
+            if (!(executor instanceof DriverCommandExecutor)) return Optional.empty();
+            Object service = FieldUtils.readField(executor, "service", true);
+            Object externalProcess = FieldUtils.readField(service, "process", true);
+            Object process = (externalProcess == null) ? null : FieldUtils.readField(externalProcess, "process", true);
+            return (process instanceof Process) ? Optional.of(((Process) process).toHandle()) : Optional.empty();
+        } catch (Exception e) {
+            LOG.debug("Unable to find local driver process", e);
+            return Optional.empty();
+        }
+    }
+}
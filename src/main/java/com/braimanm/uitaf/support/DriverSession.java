@@ -0,0 +1,150 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WrapsDriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a real WebDriver with a proxy which exposes the same interfaces but routes {@code quit()}
+ * to a handler, so the framework decides what happens to the browser when the context is closed
+ * (return to pool, asynchronous quit, etc.). Every borrow gets a new proxy and only the first
+ * {@code quit()} of a proxy reaches the handler, a stale proxy can not release the browser again.
+ * <p>
+ * The proxy implements the interfaces of the driver but not its class, so casts like
+ * {@code (RemoteWebDriver) driver} fail, use {@link TestContext#unwrap(WebDriver)} to get the real driver.
+ */
+class DriverSession {
+    private final WebDriver driver;
+    private final String key;
+    private final Class<?>[] interfaces;
+    private final long createdAt = System.currentTimeMillis();
+    private final AtomicInteger uses = new AtomicInteger();
+    private final Consumer<DriverSession> onQuit;
+    private volatile WebDriver proxy;
+    private volatile long lastReleased = createdAt;
+
+    DriverSession(WebDriver driver, String key, Consumer<DriverSession> onQuit) {
+        this.driver = driver;
+        this.key = key;
+        this.onQuit = onQuit;
+        Set<Class<?>> all = new LinkedHashSet<>(ClassUtils.getAllInterfaces(driver.getClass()));
+        all.add(WrapsDriver.class);
+        this.interfaces = all.toArray(new Class<?>[0]);
+        this.proxy = newProxy();
+    }
+
+    /**
+     * Returns the real driver behind the proxies created by the framework, other drivers are returned as is.
+     */
+    static WebDriver unwrap(WebDriver driver) {
+        while (driver != null && Proxy.isProxyClass(driver.getClass())
+                && Proxy.getInvocationHandler(driver) instanceof Handle) {
+            driver = ((Handle) Proxy.getInvocationHandler(driver)).session().driver;
+        }
+        return driver;
+    }
+
+    WebDriver getProxy() {
+        return proxy;
+    }
+
+    WebDriver getDriver() {
+        return driver;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    long getAge() {
+        return System.currentTimeMillis() - createdAt;
+    }
+
+    long getIdleTime() {
+        return System.currentTimeMillis() - lastReleased;
+    }
+
+    int getUses() {
+        return uses.get();
+    }
+
+    void borrowed() {
+        uses.incrementAndGet();
+        proxy = newProxy();
+    }
+
+    void released() {
+        lastReleased = System.currentTimeMillis();
+    }
+
+    void quit() {
+        try {
+            driver.quit();
+        } catch (Exception ignore) {
+            //Browser is already gone
+        }
+    }
+
+    private WebDriver newProxy() {
+        return (WebDriver) Proxy.newProxyInstance(driver.getClass().getClassLoader(), interfaces, new Handle());
+    }
+
+    private class Handle implements InvocationHandler {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        DriverSession session() {
+            return DriverSession.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            int argCount = (args == null) ? 0 : args.length;
+            if (argCount == 0) {
+                switch (name) {
+                    case "quit":
+                        if (released.compareAndSet(false, true)) {
+                            onQuit.accept(DriverSession.this);
+                        }
+                        return null;
+                    case "getWrappedDriver":
+                        return driver;
+                    case "toString":
+                        return driver.toString();
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                }
+            } else if (argCount == 1 && name.equals("equals")) {
+                return proxy == args[0];
+            }
+            try {
+                return method.invoke(driver, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Throttles the creation of new WebDriver instances. At most {@code webdriver.create.permits} drivers
+ * are started at the same time, and creation failing with {@link SessionNotCreatedException} or with
+ * a connection error is retried up to {@code webdriver.create.retries} times after a jittered
+ * exponential backoff, retries are disabled by default. Every attempt takes its own {@link DriverLimiter}
+ * slot, so no slot is held while waiting for the next retry. Startup times of the created drivers are
+ * collected in a histogram which is logged when the JVM exits.
+ */
+class DriverThrottle {
+    private static final Logger LOG = LoggerFactory.getLogger(DriverThrottle.class);
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    private static final long[] BUCKETS = {500, 1000, 2000, 4000, 8000, 16000, 32000, 64000};
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+    private final Semaphore permits;
+    private final int retries;
+    private final long backoff;
+    private final DriverLimiter limiter;
+
+    DriverThrottle(TestProperties props, DriverLimiter limiter) {
+        this.limiter = limiter;
+        permits = (props.getCreatePermits() > 0) ? new Semaphore(props.getCreatePermits(), true) : null;
+        retries = Math.max(0, props.getCreateRetries());
+        backoff = Math.min(MAX_BACKOFF, Math.max(1, props.getCreateBackoff()));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::logHistogram, "uitaf-driver-throttle-shutdown"));
+    }
+
+    WebDriver start(TestProperties properties, Function<TestProperties, WebDriver> factory) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return create(properties, factory);
+            } catch (RuntimeException e) {
+                if (attempt >= retries || !isRetryable(e)) throw e;
+                //Shift is capped so a large retry count does not overflow the delay
+                long ceiling = Math.min(MAX_BACKOFF, backoff << Math.min(attempt, 20));
+                long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+                LOG.warn("WebDriver creation failed, retrying in " + delay + " ms: " + String.valueOf(e.getMessage()).split("\n")[0]);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(ie);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private WebDriver create(TestProperties properties, Function<TestProperties, WebDriver> factory) {
+        if (limiter == null) {
+            return launch(properties, factory);
+        }
+        return limiter.open(properties.getDriverFingerprint(), () -> launch(properties, factory));
+    }
+
+    private WebDriver launch(TestProperties properties, Function<TestProperties, WebDriver> factory) {
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for WebDriver creation permit", e);
+            }
+        }
+        try {
+            long start = System.currentTimeMillis();
+            WebDriver driver = factory.apply(properties);
+            long millis = System.currentTimeMillis() - start;
+            record(millis);
+            if (limiter != null) {
+                limiter.recordStartup(millis);
+            }
+            return driver;
+        } finally {
+            if (permits != null) permits.release();
+        }
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SessionNotCreatedException || t instanceof ConnectException
+                    || t instanceof SocketTimeoutException || t instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(long millis) {
+        int bucket = 0;
+        while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) bucket++;
+        histogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * @return number of started drivers per startup time bucket Ex: {@code <=500ms: 3, <=1000ms: 12}
+     */
+    String getHistogram() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < histogram.length(); i++) {
+            long count = histogram.get(i);
+            if (count == 0) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append((i < BUCKETS.length) ? "<=" + BUCKETS[i] : ">" + BUCKETS[BUCKETS.length - 1]).append("ms: ").append(count);
+        }
+        return sb.toString();
+    }
+
+    private void logHistogram() {
+        String summary = getHistogram();
+        if (!summary.isEmpty()) {
+            LOG.info("WebDriver startup times: " + summary);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.json.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Keeps durations of the previous runs per Allure history id in the {@code test.duration.history}
+ * file. Each run updates an exponential moving average from the written Allure results, and the
+ * averages are used to start the longest tests first and to balance shards.
+ */
+public class DurationHistory {
+    private static final Logger LOG = LoggerFactory.getLogger(DurationHistory.class);
+    private static final double WEIGHT = 0.5;
+    private static DurationHistory instance;
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private Map<String, Long> methodDurations = new HashMap<>();
+
+    private DurationHistory(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * @return duration history or null if {@code test.duration.history} is not set
+     */
+    public static synchronized DurationHistory getInstance() {
+        File file = TestContext.getTestProperties().getDurationHistoryFile();
+        if (instance == null && file != null && !file.getPath().isEmpty()) {
+            instance = new DurationHistory(file);
+        }
+        return instance;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @param fullName - test method full name, class name and method name separated by dot
+     * @return expected duration of all invocations of the method in milliseconds or -1 if unknown
+     */
+    public synchronized long getMethodDuration(String fullName) {
+        return methodDurations.getOrDefault(fullName, -1L);
+    }
+
+    /**
+     * @param className - test class name
+     * @return expected duration of all test methods of the class in milliseconds or -1 if unknown
+     */
+    public synchronized long getClassDuration(String className) {
+        long total = -1;
+        String prefix = className + ".";
+        for (Map.Entry<String, Long> method : methodDurations.entrySet()) {
+            if (method.getKey().startsWith(prefix) && method.getKey().indexOf('.', prefix.length()) < 0) {
+                total = Math.max(total, 0) + method.getValue();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return average expected method duration in milliseconds or -1 if the history is empty
+     */
+    public synchronized long getAverageMethodDuration() {
+        if (methodDurations.isEmpty()) return -1;
+        long total = 0;
+        for (long duration : methodDurations.values()) {
+            total += duration;
+        }
+        return total / methodDurations.size();
+    }
+
+    /**
+     * Updates the history from Allure test results in the folder and saves it.
+     * @param resultsFolder - Allure results folder
+     */
+    public synchronized void record(File resultsFolder) {
+        File[] files = resultsFolder.listFiles((dir, name) -> name.endsWith("-result.json"));
+        if (files == null) return;
+        Map<String, Entry> run = new HashMap<>();
+        Json json = new Json();
+        for (File result : files) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(result), StandardCharsets.UTF_8)) {
+                Map<String, Object> map = json.toType(reader, Json.MAP_TYPE);
+                Object historyId = map.get("historyId");
+                Object fullName = map.get("fullName");
+                Object start = map.get("start");
+                Object stop = map.get("stop");
+                if (historyId == null || fullName == null || !(start instanceof Number) || !(stop instanceof Number)) {
+                    continue;
+                }
+                long duration = Math.max(0, ((Number) stop).longValue() - ((Number) start).longValue());
+                //Retried tests have several results, the longest attempt is kept
+                run.merge(historyId.toString(), new Entry(fullName.toString(), duration),
+                        (a, b) -> (a.duration >= b.duration) ? a : b);
+            } catch (Exception e) {
+                LOG.debug("Failed to read test result " + result, e);
+            }
+        }
+        Map<String, Entry> previous = new HashMap<>(entries);
+        Set<String> executed = new HashSet<>();
+        run.values().forEach(entry -> executed.add(entry.fullName));
+        //Invocations which are not executed anymore by the executed methods are outdated
+        entries.values().removeIf(entry -> executed.contains(entry.fullName));
+        run.forEach((historyId, entry) -> {
+            Entry last = previous.get(historyId);
+            long duration = (last == null) ? entry.duration
+                    : Math.round(WEIGHT * entry.duration + (1 - WEIGHT) * last.duration);
+            entries.put(historyId, new Entry(entry.fullName, duration));
+        });
+        updateMethodDurations();
+        save();
+    }
+
+    private void updateMethodDurations() {
+        Map<String, Long> durations = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            durations.merge(entry.fullName, entry.duration, Long::sum);
+        }
+        methodDurations = durations;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        Properties props = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            props.load(reader);
+        } catch (IOException e) {
+            LOG.warn("Failed to read test duration history " + file, e);
+            return;
+        }
+        for (String historyId : props.stringPropertyNames()) {
+            String[] value = props.getProperty(historyId).split(",", 2);
+            try {
+                entries.put(historyId, new Entry(value[1], Long.parseLong(value[0])));
+            } catch (RuntimeException e) {
+                LOG.debug("Skipping invalid test duration history entry " + historyId);
+            }
+        }
+        updateMethodDurations();
+    }
+
+    private void save() {
+        Properties props = new Properties();
+        entries.forEach((historyId, entry) -> props.setProperty(historyId, entry.duration + "," + entry.fullName));
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            LOG.warn("Failed to create folder " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            props.store(writer, "Test durations in milliseconds by Allure history id");
+        } catch (IOException e) {
+            LOG.warn("Failed to save test duration history " + file, e);
+        }
+    }
+
+    private static class Entry {
+        private final String fullName;
+        private final long duration;
+
+        private Entry(String fullName, long duration) {
+            this.fullName = fullName;
+            this.duration = duration;
+        }
+    }
+}
@@ -24,8 +24,7 @@ public class EnvironmentPropertyConverter implements Converter<EnvironmentsSetup
         if (envConfig.length < 2) throw new RuntimeException("Please provide test.env property in the following format <config file path>:<environment name>");
         String config = envConfig[0].trim();
         String env = envConfig[1].trim();
-        EnvironmentsSetup envSetup = new EnvironmentsSetup().fromResource(config);
-        return envSetup.getEnvironment(env);
+        return EnvironmentsSetup.load(config).getEnvironment(env);
     }
 
 
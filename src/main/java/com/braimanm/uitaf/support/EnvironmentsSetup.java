@@ -18,21 +18,116 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import com.thoughtworks.xstream.annotations.XStreamImplicit;
 
-import java.util.List;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 @SuppressWarnings({"NewClassNamingConvention", "unused", "MismatchedQueryAndUpdateOfCollection"})
 @XStreamAlias("setup")
 public class EnvironmentsSetup extends DataPersistence {
+    private static final ConcurrentMap<String, CachedSetup> cache = new ConcurrentHashMap<>();
+    private static final String OVERRIDE_URL = System.getenv("OVERRIDE_URL");
     @XStreamImplicit
     private List<Environment> config;
     private List<Property> global;
+    private transient volatile Index<Environment> environmentIndex;
+    private transient volatile Index<String> globalIndex;
 
-    public String getCustom(String name) {
-        for (Property p : global) {
-            if (p.name.equals(name)) {
-                return p.value;
+    /**
+     * Returns parsed environments file from the process wide cache. A file on the file system is parsed
+     * again only when its modification time has changed, a resource packaged in a jar is parsed once.
+     * Every call returns a copy of the parsed setup which can be modified by the caller.
+     * @param resource - environments file resource path
+     * @return parsed environments setup
+     */
+    public static EnvironmentsSetup load(String resource) {
+        CachedSetup cached = cache.get(resource);
+        if (cached != null && cached.isCurrent()) {
+            return cached.setup.copy();
+        }
+        synchronized (cache) {
+            cached = cache.get(resource);
+            if (cached == null || !cached.isCurrent()) {
+                File file = getFile(resource);
+                long stamp = (file == null) ? 0 : file.lastModified();
+                EnvironmentsSetup setup = new EnvironmentsSetup().fromResource(resource);
+                cached = new CachedSetup(file, stamp, setup);
+                cache.put(resource, cached);
+            }
+            return cached.setup.copy();
+        }
+    }
+
+    /**
+     * Returns the file of the resource, or null when the resource is not a file (e.g. packaged in a jar)
+     * and can not change while the tests are running.
+     */
+    private static File getFile(String resource) {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(resource);
+        if (url == null) {
+            url = EnvironmentsSetup.class.getClassLoader().getResource(resource);
+        }
+        if (url == null) {
+            return new File(resource);
+        }
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private EnvironmentsSetup copy() {
+        EnvironmentsSetup copy = new EnvironmentsSetup();
+        if (config != null) {
+            copy.config = new ArrayList<>(config.size());
+            config.forEach(environment -> copy.config.add(environment.copy()));
+        }
+        copy.global = copyOf(global);
+        return copy;
+    }
+
+    private static <T> List<T> copyOf(List<T> list) {
+        return (list == null) ? null : new ArrayList<>(list);
+    }
+
+    private static <T> Map<String, T> indexIgnoreCase(List<T> items, Function<T, String> key) {
+        Map<String, T> index = new HashMap<>();
+        if (items != null) {
+            for (T item : items) {
+                String name = key.apply(item);
+                if (name != null) {
+                    index.putIfAbsent(name.toLowerCase(Locale.ROOT), item);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    private static Map<String, String> indexProperties(List<Property> properties) {
+        Map<String, String> index = new LinkedHashMap<>();
+        if (properties != null) {
+            for (Property p : properties) {
+                if (!index.containsKey(p.name)) {
+                    index.put(p.name, p.value);
+                }
             }
         }
+        return Collections.unmodifiableMap(index);
+    }
+
+    public String getCustom(String name) {
+        Map<String, String> index = getCustomAsMap();
+        if (index.containsKey(name)) {
+            return index.get(name);
+        }
         throw new RuntimeException("Property \"" + name  + "\" was not found in environments configuration file");
 
     }
@@ -41,11 +136,27 @@ public class EnvironmentsSetup extends DataPersistence {
         return this.global;
     }
 
+    /**
+     * @return global custom properties by name in the order of declaration
+     */
+    public Map<String, String> getCustomAsMap() {
+        Index<String> index = globalIndex;
+        if (index == null || !index.isCurrent(global)) {
+            index = new Index<>(global, indexProperties(global));
+            globalIndex = index;
+        }
+        return index.map;
+    }
+
     public Environment getEnvironment(String env) {
-        for (Environment environment : config) {
-            if (environment.getEnvironmentName().equalsIgnoreCase(env)) {
-                return environment;
-            }
+        Index<Environment> index = environmentIndex;
+        if (index == null || !index.isCurrent(config)) {
+            index = new Index<>(config, indexIgnoreCase(config, Environment::getEnvironmentName));
+            environmentIndex = index;
+        }
+        Environment environment = (env == null) ? null : index.map.get(env.toLowerCase(Locale.ROOT));
+        if (environment != null) {
+            return environment;
         }
         throw new RuntimeException("Environment \"" + env + "\" was not found in environments configuration file");
     }
@@ -64,23 +175,41 @@ public class EnvironmentsSetup extends DataPersistence {
         List<Property> custom;
         @XStreamImplicit
         List<User> users;
+        private transient volatile Index<User> userIndex;
+        private transient volatile Index<String> customIndex;
+
+        Environment copy() {
+            Environment copy = new Environment();
+            copy.environmentName = environmentName;
+            copy.url = url;
+            copy.custom = copyOf(custom);
+            if (users != null) {
+                copy.users = new ArrayList<>(users.size());
+                users.forEach(user -> copy.users.add(user.copy()));
+            }
+            return copy;
+        }
 
         public String getEnvironmentName() {
             return environmentName;
         }
 
         public String getUrl() {
-            if (System.getenv().containsKey("OVERRIDE_URL")) {
-                return System.getenv("OVERRIDE_URL");
+            if (OVERRIDE_URL != null) {
+                return OVERRIDE_URL;
             }
             return url;
         }
 
         public User getUser(String role) {
-            for (User user : users){
-                if (user.getRole().equalsIgnoreCase(role)) {
-                    return user;
-                }
+            Index<User> index = userIndex;
+            if (index == null || !index.isCurrent(users)) {
+                index = new Index<>(users, indexIgnoreCase(users, User::getRole));
+                userIndex = index;
+            }
+            User user = (role == null) ? null : index.map.get(role.toLowerCase(Locale.ROOT));
+            if (user != null) {
+                return user;
             }
             throw new RuntimeException("User with role \"" + role  + "\" was not found in environments configuration file");
         }
@@ -90,10 +219,9 @@ public class EnvironmentsSetup extends DataPersistence {
         }
 
         public String getCustom(String name) {
-            for (Property p : custom) {
-                if (p.name.equals(name)) {
-                    return p.value;
-                }
+            Map<String, String> index = getCustomAsMap();
+            if (index.containsKey(name)) {
+                return index.get(name);
             }
             throw new RuntimeException("Property \"" + name  + "\" was not found in environments configuration file");
 
@@ -102,6 +230,18 @@ public class EnvironmentsSetup extends DataPersistence {
         public List<Property> getCustom() {
             return this.custom;
         }
+
+        /**
+         * @return environment custom properties by name in the order of declaration
+         */
+        public Map<String, String> getCustomAsMap() {
+            Index<String> index = customIndex;
+            if (index == null || !index.isCurrent(custom)) {
+                index = new Index<>(custom, indexProperties(custom));
+                customIndex = index;
+            }
+            return index.map;
+        }
     }
 
     @XStreamAlias("user")
@@ -116,6 +256,17 @@ public class EnvironmentsSetup extends DataPersistence {
         String password;
         @XStreamImplicit
         List<Property> custom;
+        private transient volatile Index<String> customIndex;
+
+        User copy() {
+            User copy = new User();
+            copy.role = role;
+            copy.fullName = fullName;
+            copy.userName = userName;
+            copy.password = password;
+            copy.custom = copyOf(custom);
+            return copy;
+        }
 
         public String getRole() {
             return role;
@@ -134,10 +285,9 @@ public class EnvironmentsSetup extends DataPersistence {
         }
 
         public String getCustom(String name) {
-            for (Property p : custom) {
-                if (p.name.equals(name)) {
-                    return p.value;
-                }
+            Map<String, String> index = getCustomAsMap();
+            if (index.containsKey(name)) {
+                return index.get(name);
             }
             throw new RuntimeException("Property \"" + name  + "\" was not found for user " + role + " in configuration file");
 
@@ -146,6 +296,51 @@ public class EnvironmentsSetup extends DataPersistence {
         public List<Property> getCustom() {
             return this.custom;
         }
+
+        /**
+         * @return user custom properties by name in the order of declaration
+         */
+        public Map<String, String> getCustomAsMap() {
+            Index<String> index = customIndex;
+            if (index == null || !index.isCurrent(custom)) {
+                index = new Index<>(custom, indexProperties(custom));
+                customIndex = index;
+            }
+            return index.map;
+        }
+    }
+
+    /**
+     * Lookup map built from a list, it is rebuilt when the list no longer holds the same elements.
+     */
+    private static class Index<V> {
+        private final List<?> source;
+        private final Map<String, V> map;
+
+        private Index(List<?> source, Map<String, V> map) {
+            this.source = copyOf(source);
+            this.map = map;
+        }
+
+        private boolean isCurrent(List<?> list) {
+            return Objects.equals(source, list);
+        }
+    }
+
+    private static class CachedSetup {
+        private final File file;
+        private final long stamp;
+        private final EnvironmentsSetup setup;
+
+        private CachedSetup(File file, long stamp, EnvironmentsSetup setup) {
+            this.file = file;
+            this.stamp = stamp;
+            this.setup = setup;
+        }
+
+        private boolean isCurrent() {
+            return file == null || file.lastModified() == stamp;
+        }
     }
 
     @XStreamAlias("prop")
@@ -0,0 +1,205 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.json.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads new remote sessions over the comma separated grid endpoints of {@code webdriver.remote.url}.
+ * Each session goes to the available endpoint with the least outstanding sessions. Endpoints are
+ * probed with {@code GET <url>/status} every {@code webdriver.remote.probe.interval} seconds and an
+ * endpoint reporting not ready is skipped. An endpoint failing {@code webdriver.remote.failure.threshold}
+ * session requests in a row is skipped for {@code webdriver.remote.failure.cooldown} seconds, after
+ * which it is tried again and skipped again on its next failure. Only connection failures, timeouts and
+ * server errors count as failures, a session rejected by the grid (e.g. unsupported capabilities) does not.
+ */
+class GridBalancer {
+    private static final Logger LOG = LoggerFactory.getLogger(GridBalancer.class);
+    private static final Map<String, GridBalancer> balancers = new ConcurrentHashMap<>();
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final int failureThreshold;
+    private final long cooldown;
+
+    private GridBalancer(String urls, TestProperties props) {
+        for (String url : urls.split(",")) {
+            if (url.trim().isEmpty()) continue;
+            try {
+                endpoints.add(new Endpoint(new URL(url.trim())));
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("webdriver.remote.url property has invalid value: " + url.trim());
+            }
+        }
+        if (endpoints.isEmpty()) {
+            throw new RuntimeException("webdriver.remote.url property has invalid value!");
+        }
+        failureThreshold = Math.max(1, props.getRemoteFailureThreshold());
+        cooldown = TimeUnit.SECONDS.toMillis(props.getRemoteFailureCooldown());
+        int interval = props.getRemoteProbeInterval();
+        if (interval > 0) {
+            RemoteHttpClients.configureJdkClient(props);
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "uitaf-grid-prober");
+                t.setDaemon(true);
+                return t;
+            });
+            prober.scheduleWithFixedDelay(() -> endpoints.forEach(endpoint -> endpoint.probe(client)),
+                    0, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    static GridBalancer getInstance(String urls, TestProperties props) {
+        return balancers.computeIfAbsent(urls, key -> new GridBalancer(key, props));
+    }
+
+    /**
+     * Reserves a session slot on the endpoint with the least outstanding sessions. When no endpoint
+     * is available all the endpoints are considered.
+     * @return reserved slot which must be released when the session is closed or failed to start
+     */
+    Slot acquire() {
+        long now = System.currentTimeMillis();
+        List<Endpoint> candidates = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.ready && endpoint.openUntil <= now) candidates.add(endpoint);
+        }
+        if (candidates.isEmpty()) {
+            LOG.warn("No healthy grid endpoint is available, trying all the endpoints");
+            candidates.addAll(endpoints);
+        }
+        int offset = Math.floorMod(next.getAndIncrement(), candidates.size());
+        Endpoint selected = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Endpoint endpoint = candidates.get((offset + i) % candidates.size());
+            if (selected == null || endpoint.outstanding.get() < selected.outstanding.get()) {
+                selected = endpoint;
+            }
+        }
+        selected.outstanding.incrementAndGet();
+        return new Slot(selected);
+    }
+
+    class Slot {
+        private final Endpoint endpoint;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Slot(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        URL getUrl() {
+            return endpoint.url;
+        }
+
+        void started() {
+            endpoint.failures.set(0);
+        }
+
+        /**
+         * Releases the slot of a session which failed to start.
+         * @param e - exception thrown while the session was created
+         * @param status - HTTP status of the new session response or -1 when there was none
+         */
+        void failed(RuntimeException e, int status) {
+            release();
+            if (!isEndpointFailure(e, status)) return;
+            if (endpoint.failures.incrementAndGet() >= failureThreshold) {
+                endpoint.openUntil = System.currentTimeMillis() + cooldown;
+                LOG.warn("Grid endpoint " + endpoint.url + " failed " + endpoint.failures.get()
+                        + " session requests in a row, skipping it for " + cooldown / 1000 + " seconds");
+            }
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+    }
+
+    private static boolean isEndpointFailure(Throwable e, int status) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof UncheckedIOException
+                    || cause instanceof TimeoutException || cause instanceof org.openqa.selenium.TimeoutException) {
+                return true;
+            }
+        }
+        return status >= 500 && !(ExceptionUtils.getRootCause(e) instanceof SessionNotCreatedException);
+    }
+
+    private static class Endpoint {
+        private final URL url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile long openUntil;
+        private volatile boolean ready = true;
+
+        private Endpoint(URL url) {
+            this.url = url;
+        }
+
+        private void probe(HttpClient client) {
+            boolean status;
+            try {
+                String base = url.toString().replaceAll("/+$", "");
+                HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/status"))
+                        .timeout(Duration.ofSeconds(5)).GET().build();
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                status = response.statusCode() == 200 && isReady(response.body());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                status = false;
+            }
+            if (status != ready) {
+                LOG.info("Grid endpoint " + url + " is " + (status ? "ready" : "not ready"));
+                ready = status;
+            }
+        }
+
+        private static boolean isReady(String body) {
+            try {
+                Map<String, Object> json = new Json().toType(body, Json.MAP_TYPE);
+                Object value = json.get("value");
+                Object ready = (value instanceof Map) ? ((Map<?, ?>) value).get("ready") : null;
+                return !Boolean.FALSE.equals(ready);
+            } catch (RuntimeException e) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.remote.http.*;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTTP client configuration of remote WebDriver sessions. All the sessions talking to the same grid
+ * URL through {@link #getFactory(TestProperties)} share one HTTP client, so open connections are reused between sessions instead of every
+ * session opening its own. Connection pool size and keep-alive timeout are applied to the JDK HTTP
+ * client through its system properties, the JDK reads them once when the first client is created,
+ * so every JDK HTTP client of the framework must be created after {@link #configureJdkClient(TestProperties)}.
+ */
+class RemoteHttpClients {
+    private static final ThreadLocal<Integer> lastStatus = new ThreadLocal<>();
+    private static Factory factory;
+
+    private RemoteHttpClients() {
+    }
+
+    static synchronized HttpClient.Factory getFactory(TestProperties props) {
+        if (factory == null) {
+            configureJdkClient(props);
+            factory = new Factory(HttpClient.Factory.createDefault());
+        }
+        return factory;
+    }
+
+    /**
+     * Sets connection pool size and keep-alive timeout system properties of the JDK HTTP client.
+     */
+    static void configureJdkClient(TestProperties props) {
+        if (props.getRemotePoolSize() > 0) {
+            setIfAbsent("jdk.httpclient.connectionPoolSize", props.getRemotePoolSize());
+        }
+        if (props.getRemoteKeepAliveTimeout() > 0) {
+            setIfAbsent("jdk.httpclient.keepalive.timeout", props.getRemoteKeepAliveTimeout());
+        }
+    }
+
+    /**
+     * @return true when any HTTP client setting differs from the Selenium defaults
+     */
+    static boolean isConfigured(TestProperties props) {
+        ClientConfig defaults = ClientConfig.defaultConfig();
+        String version = props.getRemoteHttpVersion();
+        return props.getRemotePoolSize() > 0 || props.getRemoteKeepAliveTimeout() > 0
+                || (version != null && !version.trim().isEmpty())
+                || !Duration.ofSeconds(props.getRemoteConnectTimeout()).equals(defaults.connectionTimeout())
+                || !Duration.ofSeconds(props.getRemoteReadTimeout()).equals(defaults.readTimeout());
+    }
+
+    static ClientConfig getConfig(URL url, TestProperties props) {
+        ClientConfig config = ClientConfig.defaultConfig().baseUrl(url)
+                .connectionTimeout(Duration.ofSeconds(props.getRemoteConnectTimeout()))
+                .readTimeout(Duration.ofSeconds(props.getRemoteReadTimeout()));
+        String version = props.getRemoteHttpVersion();
+        return (version == null || version.trim().isEmpty()) ? config : config.version(version.trim().toUpperCase());
+    }
+
+    /**
+     * Returns and clears HTTP status of the last response received by the current thread through the shared clients.
+     * @return HTTP status or -1 when no response was received
+     */
+    static int takeLastStatus() {
+        Integer status = lastStatus.get();
+        lastStatus.remove();
+        return (status == null) ? -1 : status;
+    }
+
+    private static synchronized void setIfAbsent(String name, int value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, String.valueOf(value));
+        }
+    }
+
+    private static class Factory implements HttpClient.Factory {
+        private final HttpClient.Factory delegate;
+        private final Map<URI, HttpClient> clients = new ConcurrentHashMap<>();
+
+        private Factory(HttpClient.Factory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpClient createClient(ClientConfig config) {
+            return clients.computeIfAbsent(config.baseUri(), uri -> new SharedClient(delegate.createClient(config)));
+        }
+
+        @Override
+        public void cleanupIdleClients() {
+            delegate.cleanupIdleClients();
+        }
+    }
+
+    /**
+     * Client which stays open when a session is closed, it is used by the next session.
+     */
+    private static class SharedClient implements HttpClient {
+        private final HttpClient client;
+
+        private SharedClient(HttpClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public WebSocket openSocket(HttpRequest request, WebSocket.Listener listener) {
+            return client.openSocket(request, listener);
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest req) {
+            HttpResponse response = client.execute(req);
+            lastStatus.set(response.getStatus());
+            return response;
+        }
+
+        @Override
+        public CompletableFuture<HttpResponse> executeAsync(HttpRequest req) {
+            return client.executeAsync(req);
+        }
+
+        @Override
+        public void close() {
+            //Kept open for the next session
+        }
+    }
+}
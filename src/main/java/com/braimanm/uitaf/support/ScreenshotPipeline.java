@@ -0,0 +1,202 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import com.google.common.hash.Hashing;
+import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.model.Attachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes screenshot attachments to the Allure results on a background stage. The attachment is
+ * registered against the running test on the calling thread, while image processing and file I/O
+ * are performed by a bounded executor. When the queue is full the calling thread writes the
+ * attachment itself. Screenshots can be re-encoded as JPEG and identical screenshots can be stored
+ * once and referenced by their content hash.
+ */
+public class ScreenshotPipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(ScreenshotPipeline.class);
+    private static ScreenshotPipeline instance;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ThreadPoolExecutor executor;
+    private final Set<String> written = ConcurrentHashMap.newKeySet();
+    private final boolean async;
+    private final boolean dedupe;
+    private final boolean jpeg;
+    private final float quality;
+    private final String type;
+    private final String extension;
+    private final int maxWidth;
+
+    private ScreenshotPipeline(TestProperties props) {
+        async = props.isScreenshotAsync();
+        maxWidth = props.getScreenshotMaxWidth();
+        dedupe = props.isScreenshotDedupe();
+        jpeg = props.getScreenshotFormat().equalsIgnoreCase("jpeg") || props.getScreenshotFormat().equalsIgnoreCase("jpg");
+        quality = Math.min(100, Math.max(1, props.getScreenshotQuality())) / 100f;
+        type = jpeg ? "image/jpeg" : "image/png";
+        extension = jpeg ? "jpg" : "png";
+        int threads = Math.max(1, props.getScreenshotThreads());
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 16), r -> {
+            Thread t = new Thread(r, "uitaf-screenshot-writer");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drain(TimeUnit.SECONDS.toMillis(30)),
+                "uitaf-screenshot-writer-shutdown"));
+    }
+
+    public static synchronized ScreenshotPipeline getInstance() {
+        if (instance == null) {
+            instance = new ScreenshotPipeline(TestContext.getTestProperties());
+        }
+        return instance;
+    }
+
+    /**
+     * Attaches PNG screenshot to the current test or step.
+     * @param title - attachment name
+     * @param png - captured screenshot
+     */
+    public void attach(String title, byte[] png) {
+        AllureLifecycle lifecycle = Allure.getLifecycle();
+        String source;
+        if (dedupe) {
+            source = Hashing.sha256().hashBytes(png) + "-attachment." + extension;
+            addAttachment(lifecycle, new Attachment().setName(title).setType(type).setSource(source));
+            if (!written.add(source)) return;
+        } else {
+            source = lifecycle.prepareAttachment(title, type, extension);
+        }
+        if (!async) {
+            write(lifecycle, source, png);
+            return;
+        }
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                write(lifecycle, source, png);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    synchronized (pending) {
+                        pending.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    private void addAttachment(AllureLifecycle lifecycle, Attachment attachment) {
+        Optional<String> current = lifecycle.getCurrentTestCaseOrStep();
+        if (!current.isPresent()) {
+            LOG.warn("Could not add screenshot attachment: no test is running");
+        } else if (current.equals(lifecycle.getCurrentTestCase())) {
+            lifecycle.updateTestCase(result -> result.getAttachments().add(attachment));
+        } else {
+            lifecycle.updateStep(step -> step.getAttachments().add(attachment));
+        }
+    }
+
+    private void write(AllureLifecycle lifecycle, String source, byte[] png) {
+        try {
+            lifecycle.writeAttachment(source, new ByteArrayInputStream(encode(png)));
+        } catch (Exception e) {
+            //Next attachment of the same screenshot writes it again
+            written.remove(source);
+            LOG.warn("Failed to write screenshot attachment " + source, e);
+        }
+    }
+
+    private byte[] encode(byte[] png) throws IOException {
+        if (maxWidth <= 0 && !jpeg) return png;
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null) return png;
+        boolean resize = maxWidth > 0 && image.getWidth() > maxWidth;
+        if (!resize && !jpeg) return png;
+        int width = resize ? maxWidth : image.getWidth();
+        int height = resize ? (int) Math.round((double) image.getHeight() * maxWidth / image.getWidth()) : image.getHeight();
+        BufferedImage scaled = new BufferedImage(width, Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (jpeg) {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(scaled, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        } else {
+            ImageIO.write(scaled, "png", out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Waits for queued screenshots to be written.
+     * @param timeout - maximum time to wait in milliseconds
+     */
+    public void drain(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (pending) {
+            long wait;
+            while (pending.get() > 0 && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    pending.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for queued screenshots to be written if the pipeline was used.
+     */
+    public static void drainPending() {
+        ScreenshotPipeline pipeline;
+        synchronized (ScreenshotPipeline.class) {
+            pipeline = instance;
+        }
+        if (pipeline != null) {
+            pipeline.drain(TimeUnit.MINUTES.toMillis(1));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import com.braimanm.ui.auto.context.WebDriverContext;
+import io.appium.java_client.InteractsWithApps;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.xml.XmlTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps WebDriver sessions alive between tests for the parallel modes listed in
+ * {@code webdriver.session.reset}. Instead of quitting, the session is cleared (extra windows,
+ * cookies, local and session storage) and navigated to about:blank, the application of an Appium
+ * session is restarted instead. A session is fully recycled
+ * after {@code webdriver.session.max.reuse} tests or after a test failure. Sessions kept by the threads
+ * of a {@code <test>} are closed when the {@code <test>} finishes, since its threads are not reused.
+ */
+public class SessionRecycler {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionRecycler.class);
+    private static final ConcurrentMap<WebDriver, KeptSession> kept = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Boolean> failed = ThreadLocal.withInitial(() -> false);
+    private static final String[] APP_CAPABILITIES = {"appium:appPackage", "appPackage", "appium:bundleId", "bundleId"};
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            kept.keySet().forEach(SessionRecycler::quit);
+            kept.clear();
+        }, "uitaf-session-recycler-shutdown"));
+    }
+
+    private SessionRecycler() {
+    }
+
+    /**
+     * Marks the sessions of the current thread to be recycled after the test.
+     */
+    public static void markFailed() {
+        failed.set(true);
+    }
+
+    public static boolean isEnabled(String parallel) {
+        return TestContext.getTestProperties().getSessionResetModes().contains(parallel);
+    }
+
+    /**
+     * Resets the session of the given context and keeps it for the next test.
+     * @param contextName - context name
+     * @return true if the session was kept, false if it has to be closed
+     */
+    public static boolean recycle(String contextName) {
+        return recycle(contextName, null);
+    }
+
+    /**
+     * Resets the session of the given context and keeps it for the next test of the same {@code <test>}.
+     * @param contextName - context name
+     * @param testContext - running {@code <test>}
+     * @return true if the session was kept, false if it has to be closed
+     */
+    public static boolean recycle(String contextName, ITestContext testContext) {
+        WebDriverContext context = TestContext.getContext(contextName);
+        if (context == null) return false;
+        WebDriver driver = context.getDriver();
+        KeptSession session = kept.computeIfAbsent(driver, d -> new KeptSession(contextName,
+                (testContext == null) ? null : testContext.getCurrentXmlTest()));
+        session.uses++;
+        int maxReuse = TestContext.getTestProperties().getSessionMaxReuse();
+        if (failed.get() || (maxReuse > 0 && session.uses >= maxReuse) || !reset(driver)) {
+            kept.remove(driver);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Must be invoked after all the contexts of the test were recycled or closed.
+     */
+    public static void testCompleted() {
+        failed.remove();
+    }
+
+    /**
+     * Stops tracking the session of the given context, must be invoked before the context is closed.
+     * @param contextName - context name
+     */
+    public static void forget(String contextName) {
+        WebDriverContext context = TestContext.getContext(contextName);
+        if (context != null) {
+            kept.remove(context.getDriver());
+        }
+    }
+
+    /**
+     * Closes the kept sessions of the current thread and of the threads which are not alive anymore.
+     */
+    public static void closeKeptSessions() {
+        List<Map.Entry<WebDriver, KeptSession>> sessions = new ArrayList<>(kept.entrySet());
+        for (Map.Entry<WebDriver, KeptSession> entry : sessions) {
+            KeptSession session = entry.getValue();
+            if (session.owner == Thread.currentThread()) {
+                kept.remove(entry.getKey());
+                WebDriverContext context = TestContext.getContext(session.contextName);
+                if (context != null && context.getDriver() == entry.getKey()) {
+                    TestContext.removeContext(session.contextName);
+                }
+            } else if (!session.owner.isAlive()) {
+                kept.remove(entry.getKey());
+                quit(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Closes the sessions kept by the other threads of the finished {@code <test>}, sessions of the
+     * current thread are kept for the next {@code <test>} running on it.
+     * @param testContext - finished {@code <test>}
+     */
+    public static void closeKeptSessions(ITestContext testContext) {
+        XmlTest test = testContext.getCurrentXmlTest();
+        List<Map.Entry<WebDriver, KeptSession>> sessions = new ArrayList<>(kept.entrySet());
+        for (Map.Entry<WebDriver, KeptSession> entry : sessions) {
+            KeptSession session = entry.getValue();
+            if (session.test == test && session.owner != Thread.currentThread() && kept.remove(entry.getKey(), session)) {
+                quit(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Clears the browser session so it can be used by the next test. Appium sessions of native apps
+     * are reset by terminating and activating the application under test.
+     * @param driver - driver to clear
+     * @return true if the session was successfully cleared
+     */
+    public static boolean reset(WebDriver driver) {
+        try {
+            String app = getAppId(driver);
+            if (app != null) {
+                ((InteractsWithApps) driver).terminateApp(app);
+                ((InteractsWithApps) driver).activateApp(app);
+                return true;
+            }
+            List<String> handles = new ArrayList<>(driver.getWindowHandles());
+            for (int i = 1; i < handles.size(); i++) {
+                driver.switchTo().window(handles.get(i)).close();
+            }
+            driver.switchTo().window(handles.get(0));
+            if (driver instanceof JavascriptExecutor) {
+                ((JavascriptExecutor) driver).executeScript(
+                        "try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}");
+            }
+            driver.manage().deleteAllCookies();
+            driver.get("about:blank");
+            return true;
+        } catch (Exception e) {
+            LOG.debug("Failed to reset WebDriver session, it will be recycled", e);
+            return false;
+        }
+    }
+
+    private static String getAppId(WebDriver driver) {
+        if (!(driver instanceof InteractsWithApps) || !(driver instanceof HasCapabilities)) return null;
+        Capabilities capabilities = ((HasCapabilities) driver).getCapabilities();
+        for (String name : APP_CAPABILITIES) {
+            Object app = capabilities.getCapability(name);
+            if (app != null) return app.toString();
+        }
+        return null;
+    }
+
+    private static void quit(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (Exception ignore) {
+            //Browser is already gone
+        }
+    }
+
+    private static class KeptSession {
+        private final Thread owner = Thread.currentThread();
+        private final String contextName;
+        private final XmlTest test;
+        private int uses = 0;
+
+        private KeptSession(String contextName, XmlTest test) {
+            this.contextName = contextName;
+            this.test = test;
+        }
+    }
+}
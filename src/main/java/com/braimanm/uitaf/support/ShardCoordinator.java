@@ -0,0 +1,194 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands suite units to worker JVMs one at a time over a loopback socket. A worker asks for work with
+ * {@code NEXT <worker index>}, reports every executed unit with {@code DONE <id> <status>} and receives
+ * either {@code RUN <id> <suite files>} or {@code STOP}. The unit of a worker which disconnects before
+ * reporting it is given to the next idle worker, a unit is attempted at most twice. The time the
+ * requeued unit was handed to the disconnected worker is kept so its partial results can be dropped.
+ */
+class ShardCoordinator implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardCoordinator.class);
+    private static final int MAX_ATTEMPTS = 2;
+    private final Deque<Item> queue = new ArrayDeque<>();
+    private final Map<Integer, Long> abandoned = new HashMap<>();
+    private final ServerSocket server;
+    private int pending;
+    private int status;
+    private boolean closed;
+
+    ShardCoordinator(List<Item> items) throws IOException {
+        queue.addAll(items);
+        pending = items.size();
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "uitaf-shard-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> serve(socket), "uitaf-shard-coordinator-worker");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    LOG.warn("Failed to accept worker connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Item current = null;
+        int worker = -1;
+        long started = 0;
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("NEXT ")) {
+                    worker = Integer.parseInt(line.substring(5).trim());
+                } else if (line.startsWith("DONE ") && current != null) {
+                    String[] done = line.split(" ");
+                    completed(current, Integer.parseInt(done[2]));
+                    current = null;
+                }
+                current = next();
+                if (current == null) {
+                    out.println("STOP");
+                    return;
+                }
+                started = System.currentTimeMillis();
+                out.println("RUN " + current.id + " " + String.join("\t", current.files));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Worker connection failed", e);
+        } finally {
+            if (current != null) {
+                requeue(current, worker, started);
+            }
+        }
+    }
+
+    private synchronized Item next() {
+        while (queue.isEmpty() && pending > 0 && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        Item item = queue.pollFirst();
+        if (item != null) {
+            item.attempts++;
+        }
+        return item;
+    }
+
+    private synchronized void completed(Item item, int itemStatus) {
+        status |= itemStatus;
+        pending--;
+        notifyAll();
+    }
+
+    private synchronized void requeue(Item item, int worker, long started) {
+        if (item.attempts < MAX_ATTEMPTS) {
+            LOG.warn("Worker stopped while running " + item.name + ", the unit is requeued");
+            queue.addFirst(item);
+            if (worker >= 0) {
+                abandoned.merge(worker, started, Math::min);
+            }
+        } else {
+            LOG.error("Worker stopped while running " + item.name + ", giving up after " + item.attempts + " attempts");
+            status |= 1;
+            pending--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until all the units are executed or all the workers are gone.
+     * @param workers - worker processes
+     * @return combined TestNG status of the executed units
+     */
+    int await(List<Process> workers) throws InterruptedException {
+        synchronized (this) {
+            while (pending > 0 && workers.stream().anyMatch(Process::isAlive)) {
+                wait(TimeUnit.SECONDS.toMillis(1));
+            }
+            if (pending > 0) {
+                LOG.error("All workers stopped, " + pending + " units were not executed");
+                status |= 1;
+            }
+        }
+        for (Process worker : workers) {
+            worker.waitFor(1, TimeUnit.MINUTES);
+        }
+        synchronized (this) {
+            return status;
+        }
+    }
+
+    /**
+     * @return worker index mapped to the time it was given a unit which was requeued after the worker stopped
+     */
+    synchronized Map<Integer, Long> getAbandoned() {
+        return new HashMap<>(abandoned);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        server.close();
+    }
+
+    static class Item {
+        private final int id;
+        private final String name;
+        private final List<String> files;
+        private int attempts;
+
+        Item(int id, String name, List<String> files) {
+            this.id = id;
+            this.name = name;
+            this.files = files;
+        }
+    }
+}
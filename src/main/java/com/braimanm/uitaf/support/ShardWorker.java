@@ -0,0 +1,49 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Worker JVM of the dynamic shard dispatch. Pulls suite units from the coordinator port given
+ * as the first argument and runs them until the coordinator has no more work.
+ */
+public class ShardWorker {
+
+    private ShardWorker() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        TestRunner runner = new TestRunner();
+        runner.deleteResultsFolder();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println("NEXT " + TestContext.getTestProperties().getShardIndex());
+            String line;
+            while ((line = in.readLine()) != null && line.startsWith("RUN ")) {
+                String[] run = line.split(" ", 3);
+                int status = runner.runSuites(Arrays.asList(run[2].split("\t")));
+                if (status == 2) status = 0; //Skipped tests due to retry without failures
+                out.println("DONE " + run[1] + " " + status);
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.support;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.xml.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Splits TestNG suites into independently runnable units, one per test class of every
+ * {@code <test>} element, and builds suite files back from any subset of the units.
+ * Tests defined by packages are kept as a single unit.
+ */
+class SuiteUnits {
+
+    private SuiteUnits() {
+    }
+
+    static List<Unit> split(List<String> suiteFiles) throws IOException {
+        List<Unit> units = new ArrayList<>();
+        for (String suiteFile : suiteFiles) {
+            for (XmlSuite suite : parse(new File(suiteFile))) {
+                for (XmlTest test : suite.getTests()) {
+                    if (test.getXmlClasses().isEmpty()) {
+                        units.add(new Unit(units.size(), suite, test, null));
+                    } else {
+                        for (XmlClass xmlClass : test.getXmlClasses()) {
+                            units.add(new Unit(units.size(), suite, test, xmlClass));
+                        }
+                    }
+                }
+            }
+        }
+        return units;
+    }
+
+    private static List<XmlSuite> parse(File file) throws IOException {
+        List<XmlSuite> suites = new ArrayList<>();
+        XmlSuite suite;
+        try (InputStream is = new FileInputStream(file)) {
+            suite = new SuiteXmlParser().parse(file.getAbsolutePath(), is, false);
+        }
+        suites.add(suite);
+        for (String child : suite.getSuiteFiles()) {
+            File childFile = new File(child);
+            if (!childFile.isAbsolute()) {
+                childFile = new File(file.getAbsoluteFile().getParentFile(), child);
+            }
+            suites.addAll(parse(childFile));
+        }
+        return suites;
+    }
+
+    /**
+     * Builds suites which contain only the given units, keeping the original order of suites,
+     * tests and classes.
+     */
+    static List<XmlSuite> toSuites(Collection<Unit> units) {
+        List<Unit> sorted = new ArrayList<>(units);
+        sorted.sort(Comparator.comparingInt(unit -> unit.index));
+        Map<XmlSuite, XmlSuite> suites = new LinkedHashMap<>();
+        Map<XmlTest, XmlTest> tests = new HashMap<>();
+        for (Unit unit : sorted) {
+            XmlSuite suite = suites.computeIfAbsent(unit.suite, SuiteUnits::copySuite);
+            XmlTest test = tests.computeIfAbsent(unit.test, t -> copyTest(t, suite));
+            if (unit.xmlClass != null) {
+                List<XmlClass> classes = new ArrayList<>(test.getXmlClasses());
+                classes.add(unit.xmlClass);
+                test.setXmlClasses(classes);
+            } else {
+                test.setXmlPackages(unit.test.getXmlPackages());
+            }
+        }
+        return new ArrayList<>(suites.values());
+    }
+
+    /**
+     * Groups units into batches which keep the parallel settings of their suites: classes of one
+     * {@code <test>} are batched up to its thread count, units of suites running tests in parallel
+     * or not running in parallel at all are batched per suite. Units keep the given order inside
+     * the batches.
+     * @param units - units in the order of execution
+     * @param threadCount - thread count override of the suite by suite name, null when not overridden
+     */
+    static List<List<Unit>> batch(List<Unit> units, Function<String, Integer> threadCount) {
+        Map<Object, List<List<Unit>>> groups = new LinkedHashMap<>();
+        List<List<Unit>> batches = new ArrayList<>();
+        for (Unit unit : units) {
+            XmlSuite.ParallelMode parallel = unit.test.getParallel();
+            boolean perSuite = parallel == null || parallel == XmlSuite.ParallelMode.TESTS
+                    || parallel == XmlSuite.ParallelMode.NONE;
+            Integer override = threadCount.apply(unit.suite.getName());
+            int size = Math.max(1, (override != null) ? override
+                    : perSuite ? unit.suite.getThreadCount() : unit.test.getThreadCount());
+            List<List<Unit>> group = groups.computeIfAbsent(perSuite ? unit.suite : unit.test, key -> new ArrayList<>());
+            if (group.isEmpty() || group.get(group.size() - 1).size() >= size) {
+                List<Unit> next = new ArrayList<>();
+                group.add(next);
+                batches.add(next);
+            }
+            group.get(group.size() - 1).add(unit);
+        }
+        return batches;
+    }
+
+    /**
+     * Writes suites to the folder.
+     * @return absolute paths of the written suite files
+     */
+    static List<String> write(List<XmlSuite> suites, File folder, String name) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (XmlSuite suite : suites) {
+            File file = new File(folder, name + "-" + files.size() + ".xml");
+            FileUtils.write(file, suite.toXml(), StandardCharsets.UTF_8);
+            files.add(file.getAbsolutePath());
+        }
+        return files;
+    }
+
+    private static XmlSuite copySuite(XmlSuite suite) {
+        XmlSuite copy = suite.shallowCopy();
+        copy.setTests(new ArrayList<>());
+        copy.setSuiteFiles(new ArrayList<>());
+        copy.setGroups(suite.getGroups());
+        copy.setPreserveOrder(suite.getPreserveOrder());
+        copy.setGroupByInstances(suite.getGroupByInstances());
+        return copy;
+    }
+
+    private static XmlTest copyTest(XmlTest test, XmlSuite suite) {
+        XmlTest copy = new XmlTest(suite);
+        copy.setName(test.getName());
+        copy.setParameters(test.getLocalParameters());
+        copy.setGroups(test.getXmlGroups());
+        copy.setParallel(test.getParallel());
+        copy.setThreadCount(test.getThreadCount());
+        copy.setPreserveOrder(test.getPreserveOrder());
+        copy.setGroupByInstances(test.getGroupByInstances());
+        copy.setSkipFailedInvocationCounts(test.skipFailedInvocationCounts());
+        copy.setAllowReturnValues(test.getAllowReturnValues());
+        copy.setMethodSelectors(test.getMethodSelectors());
+        copy.setVerbose(test.getVerbose());
+        if (test.getTimeOut() != null) {
+            copy.setTimeOut(Long.parseLong(test.getTimeOut()));
+        }
+        return copy;
+    }
+
+    static class Unit {
+        private final int index;
+        private final XmlSuite suite;
+        private final XmlTest test;
+        private final XmlClass xmlClass;
+
+        private Unit(int index, XmlSuite suite, XmlTest test, XmlClass xmlClass) {
+            this.index = index;
+            this.suite = suite;
+            this.test = test;
+            this.xmlClass = xmlClass;
+        }
+
+        /**
+         * @return test class name or null when the unit is defined by packages
+         */
+        String getClassName() {
+            return (xmlClass == null) ? null : xmlClass.getName();
+        }
+
+        String getName() {
+            return suite.getName() + "/" + test.getName() + "/" + ((xmlClass == null) ? "*" : xmlClass.getName());
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
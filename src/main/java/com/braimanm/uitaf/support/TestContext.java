@@ -2,11 +2,21 @@ package com.braimanm.uitaf.support;
 
 import com.braimanm.ui.auto.context.PageComponentContext;
 import org.openqa.selenium.Dimension;
+import org.openqa.selenium.WebDriver;
+
+import java.util.function.Supplier;
 
 public class TestContext extends PageComponentContext {
 	private static final UITAFProperties frameworkProps = new UITAFProperties();
-	private static final ThreadLocal<TestProperties> props = ThreadLocal.withInitial(TestContext::loadTestProperties);
+	private static final Object propsLock = new Object();
+	private static volatile TestProperties sharedProps;
+	private static final ThreadLocal<TestProperties> props = ThreadLocal.withInitial(() -> getSharedTestProperties().copy());
 	private static final DriverProvider driverProvider = loadDriverProvider();
+	private static DriverPool driverPool;
+	private static DriverPrewarmer driverPrewarmer;
+	private static DriverReaper driverReaper;
+	private static DriverLimiter driverLimiter;
+	private static DriverThrottle driverThrottle;
 
 	private static TestProperties loadTestProperties() {
 		String className = frameworkProps.getTestPropertiesClass();
@@ -25,6 +35,24 @@ public class TestContext extends PageComponentContext {
 		return new TestProperties();
 	}
 
+	/**
+	 * Test properties are resolved once per JVM, every thread works with its own copy
+	 * so changes made by one test do not leak into the shared snapshot.
+	 */
+	private static TestProperties getSharedTestProperties() {
+		TestProperties shared = sharedProps;
+		if (shared == null) {
+			synchronized (propsLock) {
+				shared = sharedProps;
+				if (shared == null) {
+					shared = loadTestProperties();
+					sharedProps = shared;
+				}
+			}
+		}
+		return shared;
+	}
+
 	private static DriverProvider loadDriverProvider() {
 		String className = frameworkProps.getDriverProviderClass();
 		if (className == null || className.trim().isEmpty()) {
@@ -47,9 +75,120 @@ public class TestContext extends PageComponentContext {
 		return (T) props.get();
 	}
 
+	public static synchronized DriverPool getDriverPool() {
+		if (driverPool == null && getTestProperties().getDriverPoolSize() > 0) {
+			driverPool = new DriverPool(getTestProperties(), TestContext::startDriver);
+		}
+		return driverPool;
+	}
+
+	private static synchronized DriverPrewarmer getDriverPrewarmer() {
+		if (driverPrewarmer == null) {
+			driverPrewarmer = new DriverPrewarmer(getTestProperties().getDriverPrewarmDepth(),
+					TestContext::startDriver);
+		}
+		return driverPrewarmer;
+	}
+
+	/**
+	 * Quits pre-warmed drivers which were not taken by any test.
+	 */
+	public static void discardPrewarmedDrivers() {
+		DriverPrewarmer prewarmer;
+		synchronized (TestContext.class) {
+			prewarmer = driverPrewarmer;
+		}
+		if (prewarmer != null) {
+			prewarmer.discardAll();
+		}
+	}
+
+	private static synchronized DriverReaper getDriverReaper() {
+		if (driverReaper == null) {
+			driverReaper = new DriverReaper(getTestProperties());
+		}
+		return driverReaper;
+	}
+
+	/**
+	 * Waits for drivers which are being closed in background to quit.
+	 */
+	public static void drainClosingDrivers() {
+		DriverReaper reaper;
+		synchronized (TestContext.class) {
+			reaper = driverReaper;
+		}
+		if (reaper != null) {
+			reaper.drain();
+		}
+	}
+
+	private static synchronized DriverLimiter getDriverLimiter() {
+		TestProperties properties = getTestProperties();
+		if (driverLimiter == null && (properties.getMaxActiveDrivers() > 0 || properties.isAdmissionAdaptive())) {
+			driverLimiter = new DriverLimiter(properties, TestContext::reclaimIdleDriver);
+		}
+		return driverLimiter;
+	}
+
+	private static boolean reclaimIdleDriver() {
+		DriverPool pool;
+		DriverPrewarmer prewarmer;
+		synchronized (TestContext.class) {
+			pool = driverPool;
+			prewarmer = driverPrewarmer;
+		}
+		return (pool != null && pool.evictOldest()) || (prewarmer != null && prewarmer.discardUnclaimed());
+	}
+
+	private static synchronized DriverThrottle getDriverThrottle() {
+		if (driverThrottle == null) {
+			driverThrottle = new DriverThrottle(getTestProperties(), getDriverLimiter());
+		}
+		return driverThrottle;
+	}
+
+	static <T> T withTestProperties(TestProperties properties, Supplier<T> action) {
+		props.set(properties);
+		try {
+			return action.get();
+		} finally {
+			props.remove();
+		}
+	}
+
+	private static WebDriver startDriver(TestProperties properties) {
+		return getDriverThrottle().start(properties, driverProvider::getNewDriverInstance);
+	}
+
+	private static WebDriver createDriver(TestProperties properties) {
+		if (properties.getDriverPoolSize() > 0) {
+			return getDriverPool().borrow(properties);
+		}
+		WebDriver driver;
+		if (properties.getDriverPrewarmDepth() > 0) {
+			driver = getDriverPrewarmer().take(properties);
+		} else {
+			driver = startDriver(properties);
+		}
+		if (properties.isQuitAsync()) {
+			driver = new DriverSession(driver, properties.getDriverFingerprint(), getDriverReaper()::reap).getProxy();
+		}
+		return driver;
+	}
+
+	/**
+	 * Drivers of the framework are proxies exposing the interfaces of the real driver only,
+	 * use this method when the concrete driver class is needed. Ex: (RemoteWebDriver) unwrap(getDriver())
+	 * @param driver - driver returned by the context
+	 * @return the real driver instance
+	 */
+	public static WebDriver unwrap(WebDriver driver) {
+		return DriverSession.unwrap(driver);
+	}
+
 	public static void init(String contextName) {
-		initContext(contextName, () ->
-				driverProvider.getNewDriverInstance(getTestProperties()));
+		initContext(contextName, () -> createDriver(getTestProperties()));
 		String res = getTestProperties().getScreenSize();
 		if (res != null) {
 			String[] resWH = res.toLowerCase().split("x");
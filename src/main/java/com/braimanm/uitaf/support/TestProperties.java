@@ -18,12 +18,37 @@ import ru.qatools.properties.*;
 
 import java.io.File;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.reflect.Modifier;
+import java.util.*;
 
 @SuppressWarnings({"FieldCanBeLocal", "FieldMayBeFinal", "unused"})
 @Resource.Classpath("test.properties")
-public class TestProperties {
+public class TestProperties implements Cloneable {
+	private static final Map<String, String> ENV_INDEX = indexEnvironment();
+	private static final ClassValue<List<Field>> PROPERTY_FIELDS = new ClassValue<List<Field>>() {
+		@Override
+		protected List<Field> computeValue(Class<?> type) {
+			return findPropertyFields(type);
+		}
+	};
+	private static final ClassValue<List<Field>> INSTANCE_FIELDS = new ClassValue<List<Field>>() {
+		@Override
+		protected List<Field> computeValue(Class<?> type) {
+			List<Field> fields = new ArrayList<>();
+			for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())
+							&& !field.getType().isPrimitive()) {
+						field.setAccessible(true);
+						fields.add(field);
+					}
+				}
+			}
+			return Collections.unmodifiableList(fields);
+		}
+	};
+	private transient volatile List<Parameter> parameters;
+	private transient volatile String description;
 	private String reportVersion = "1.0.1";
 	@Hide
 	@Property("test.env")
@@ -45,6 +70,46 @@ public class TestProperties {
 	@Property("webdriver.remote.url")
 	private String remoteURL;
 	@Hide
+	@Property("webdriver.appium.devices")
+	private String appiumDevices;
+	@Hide
+	@Property("webdriver.appium.device.capability")
+	@DefaultValue("appium:udid")
+	private String appiumDeviceCapability;
+	@Hide
+	@Property("webdriver.appium.device.timeout")
+	@DefaultValue("600")
+	private int appiumDeviceTimeout; //In seconds
+	@Hide
+	@Property("webdriver.remote.probe.interval")
+	@DefaultValue("10")
+	private int remoteProbeInterval; //In seconds
+	@Hide
+	@Property("webdriver.remote.failure.threshold")
+	@DefaultValue("3")
+	private int remoteFailureThreshold;
+	@Hide
+	@Property("webdriver.remote.failure.cooldown")
+	@DefaultValue("30")
+	private int remoteFailureCooldown; //In seconds
+	@Hide
+	@Property("webdriver.remote.connect.timeout")
+	@DefaultValue("10")
+	private int remoteConnectTimeout; //In seconds
+	@Hide
+	@Property("webdriver.remote.read.timeout")
+	@DefaultValue("180")
+	private int remoteReadTimeout; //In seconds
+	@Hide
+	@Property("webdriver.remote.http.version")
+	private String remoteHttpVersion;
+	@Hide
+	@Property("webdriver.remote.keepalive.timeout")
+	private int remoteKeepAliveTimeout; //In seconds
+	@Hide
+	@Property("webdriver.remote.pool.size")
+	private int remotePoolSize;
+	@Hide
 	@Property("webdriver.browser.platform")
 	private String platform;
 	@Hide
@@ -80,9 +145,30 @@ public class TestProperties {
 	private String userAgent;
 	@Property("test.parallel.threads")
 	private Integer threadCount;
+	@Hide
+	@Property("test.parallel.threads.suites")
+	private String suiteThreadCounts;
+	@Hide
+	@Property("test.suite.threads")
+	@DefaultValue("1")
+	private int suiteThreads;
 	@Property("test.default.retry")
 	@DefaultValue("2")
 	private int testDefaultRetry;
+	@Hide
+	@Property("test.shards")
+	private int testShards;
+	@Hide
+	@Property("test.shards.dispatch")
+	@DefaultValue("static")
+	private String shardsDispatch;
+	@Hide
+	@Property("test.shard.index")
+	@DefaultValue("-1")
+	private int shardIndex;
+	@Hide
+	@Property("test.duration.history")
+	private File durationHistoryFile;
 	@Property("webdriver.install")
 	@DefaultValue("false")
 	private boolean installDrivers;
@@ -92,6 +178,114 @@ public class TestProperties {
 	@Hide
 	@Property("report.issue.url")
 	private String issueUrlPattern;
+	@Hide
+	@Property("report.results.async")
+	private boolean resultsAsync;
+	@Hide
+	@Property("report.results.queue.size")
+	@DefaultValue("1024")
+	private int resultsQueueSize;
+	@Hide
+	@Property("report.screenshot.async")
+	@DefaultValue("true")
+	private boolean screenshotAsync;
+	@Hide
+	@Property("report.screenshot.threads")
+	@DefaultValue("2")
+	private int screenshotThreads;
+	@Hide
+	@Property("report.screenshot.max.width")
+	private int screenshotMaxWidth;
+	@Hide
+	@Property("report.screenshot.format")
+	@DefaultValue("png")
+	private String screenshotFormat;
+	@Hide
+	@Property("report.screenshot.quality")
+	@DefaultValue("80")
+	private int screenshotQuality;
+	@Hide
+	@Property("report.screenshot.dedupe")
+	private boolean screenshotDedupe;
+	@Hide
+	@Property("webdriver.pool.size")
+	private int driverPoolSize;
+	@Hide
+	@Property("webdriver.pool.idle.timeout")
+	@DefaultValue("300")
+	private int driverPoolIdleTimeout; //In seconds
+	@Hide
+	@Property("webdriver.pool.max.age")
+	@DefaultValue("1800")
+	private int driverPoolMaxAge; //In seconds
+	@Hide
+	@Property("webdriver.pool.max.uses")
+	@DefaultValue("50")
+	private int driverPoolMaxUses;
+	@Hide
+	@Property("webdriver.prewarm.depth")
+	private int driverPrewarmDepth;
+	@Hide
+	@Property("webdriver.session.reset")
+	private String sessionResetModes;
+	@Hide
+	@Property("webdriver.session.max.reuse")
+	@DefaultValue("10")
+	private int sessionMaxReuse;
+	@Hide
+	@Property("webdriver.quit.async")
+	private boolean quitAsync;
+	@Hide
+	@Property("webdriver.quit.threads")
+	@DefaultValue("4")
+	private int quitThreads;
+	@Hide
+	@Property("webdriver.quit.timeout")
+	@DefaultValue("30")
+	private int quitTimeout; //In seconds
+	@Hide
+	@Property("webdriver.quit.drain.timeout")
+	@DefaultValue("60")
+	private int quitDrainTimeout; //In seconds
+	@Hide
+	@Property("webdriver.max.active")
+	private int maxActiveDrivers;
+	@Hide
+	@Property("webdriver.max.active.timeout")
+	@DefaultValue("600")
+	private int maxActiveTimeout; //In seconds
+	@Hide
+	@Property("webdriver.create.permits")
+	private int createPermits;
+	@Hide
+	@Property("webdriver.create.retries")
+	@DefaultValue("0")
+	private int createRetries;
+	@Hide
+	@Property("webdriver.create.backoff")
+	@DefaultValue("1000")
+	private long createBackoff; //In milliseconds
+	@Hide
+	@Property("webdriver.max.active.min")
+	@DefaultValue("1")
+	private int minActiveDrivers;
+	@Hide
+	@Property("webdriver.admission.adaptive")
+	private boolean admissionAdaptive;
+	@Hide
+	@Property("webdriver.admission.driver.memory")
+	@DefaultValue("512")
+	private int admissionDriverMemory; //In megabytes
+	@Hide
+	@Property("webdriver.admission.max.load")
+	@DefaultValue("1.5")
+	private double admissionMaxLoad;
+	@Hide
+	@Property("test.users.acquire.timeout")
+	private int usersAcquireTimeout; //In seconds
+	@Hide
+	@Property("test.users.lease.dir")
+	private File usersLeaseFolder;
 
 	public TestProperties() {
 		populateEnvProp();
@@ -111,6 +305,75 @@ public class TestProperties {
 		}
 	}
 
+	/**
+	 * Creates a copy of these properties which can be modified independently. Arrays, lists, sets, maps
+	 * and the test environment are copied, other mutable objects held by subclass fields are shared.
+	 * @return copy of the properties
+	 */
+	public TestProperties copy() {
+		TestProperties copy;
+		try {
+			copy = (TestProperties) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+		if (testEnvironment != null) {
+			copy.testEnvironment = testEnvironment.copy();
+		}
+		for (Field field : INSTANCE_FIELDS.get(this.getClass())) {
+			try {
+				Object value = copyOf(field.get(this));
+				if (value != null && field.getType().isInstance(value)) {
+					field.set(copy, value);
+				}
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("Failed to copy test property " + field.getName(), e);
+			}
+		}
+		return copy;
+	}
+
+	private static Object copyOf(Object value) {
+		if (value instanceof Object[]) return ((Object[]) value).clone();
+		if (value instanceof List) return new ArrayList<>((List<?>) value);
+		if (value instanceof SortedSet) return new TreeSet<>((SortedSet<?>) value);
+		if (value instanceof Set) return new LinkedHashSet<>((Set<?>) value);
+		if (value instanceof SortedMap) return new TreeMap<>((SortedMap<?, ?>) value);
+		if (value instanceof Map) return new LinkedHashMap<>((Map<?, ?>) value);
+		return null;
+	}
+
+	/**
+	 * Clears the values computed from the properties, subclasses call it when they change a property.
+	 */
+	protected void propertiesChanged() {
+		parameters = null;
+		description = null;
+	}
+
+	private static Map<String, String> indexEnvironment() {
+		Map<String, String> index = new HashMap<>();
+		for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+			index.putIfAbsent(entry.getKey().toUpperCase(Locale.ROOT), entry.getValue());
+		}
+		return Collections.unmodifiableMap(index);
+	}
+
+	private static List<Field> findPropertyFields(Class<?> type) {
+		List<Field> fields = new ArrayList<>();
+		Class<?> current = type;
+		while (current != null && current != Object.class) {
+			for (Field field : current.getDeclaredFields()) {
+				if (field.isAnnotationPresent(Property.class)) {
+					field.setAccessible(true);
+					fields.add(field);
+				}
+			}
+			current = current.getSuperclass();
+		}
+		return Collections.unmodifiableList(fields);
+	}
+
 	public void setReportUrlPatterns() {
 		if (issueUrlPattern != null) {
 			System.setProperty("allure.issues.tracker.pattern", issueUrlPattern);
@@ -125,33 +388,55 @@ public class TestProperties {
 	}
 
 	protected void populateEnvProp() {
-		Class<?> current = this.getClass();
-		while (current != null && current != Object.class) {
-			for (Field field : current.getDeclaredFields()) {
-				if (field.isAnnotationPresent(Property.class)) {
-					String prop = field.getAnnotation(Property.class).value();
-					String value = getEnvValue(prop.replace(".", "_"));
-					if (value != null) {
-						System.setProperty(prop, value);
-					}
-				}
+		for (Field field : PROPERTY_FIELDS.get(this.getClass())) {
+			String prop = field.getAnnotation(Property.class).value();
+			String value = getEnvValue(prop.replace(".", "_"));
+			if (value != null) {
+				System.setProperty(prop, value);
 			}
-			current = current.getSuperclass();
 		}
 	}
 
 	protected String getEnvValue(String prop) {
-		for (String key : System.getenv().keySet()) {
-			if (prop.equalsIgnoreCase(key)) {
-				return System.getenv(key);
-			}
-		}
-		return null;
+		return ENV_INDEX.get(prop.toUpperCase(Locale.ROOT));
 	}
 
 	public String getRemoteURL() {
 		return remoteURL;
 	}
+	public String getAppiumDevices() {
+		return appiumDevices;
+	}
+	public String getAppiumDeviceCapability() {
+		return appiumDeviceCapability;
+	}
+	public int getAppiumDeviceTimeout() {
+		return appiumDeviceTimeout;
+	}
+	public int getRemoteProbeInterval() {
+		return remoteProbeInterval;
+	}
+	public int getRemoteFailureThreshold() {
+		return remoteFailureThreshold;
+	}
+	public int getRemoteFailureCooldown() {
+		return remoteFailureCooldown;
+	}
+	public int getRemoteConnectTimeout() {
+		return remoteConnectTimeout;
+	}
+	public int getRemoteReadTimeout() {
+		return remoteReadTimeout;
+	}
+	public String getRemoteHttpVersion() {
+		return remoteHttpVersion;
+	}
+	public int getRemoteKeepAliveTimeout() {
+		return remoteKeepAliveTimeout;
+	}
+	public int getRemotePoolSize() {
+		return remotePoolSize;
+	}
 	public String getBrowserPlatform() {
 		return platform;
 	}
@@ -163,6 +448,7 @@ public class TestProperties {
 	}
 	public void setBrowserType(String browserType) {
 		this.browserType=browserType;
+		propertiesChanged();
 	}
 	public int getPageTimeout() {
 		return page_timeout;
@@ -197,9 +483,11 @@ public class TestProperties {
 
 	@Override
 	public String toString() {
+		String cached = description;
+		if (cached != null) return cached;
 		StringBuilder str = new StringBuilder();
-		for (Field field : this.getClass().getDeclaredFields()) {
-			if (field.isAnnotationPresent(Property.class)) {
+		for (Field field : PROPERTY_FIELDS.get(this.getClass())) {
+			if (field.getDeclaringClass() == this.getClass()) {
 				String prop = field.getAnnotation(Property.class).value();
 				String value = null;
 				try {
@@ -210,10 +498,17 @@ public class TestProperties {
 				str.append(prop).append(" = ").append(value).append("\n");
 			}
 		}
-		return str.toString();
+		description = str.toString();
+		return description;
 	}
 
+	/**
+	 * Returns the visible properties as report parameters, the list is computed once per properties instance.
+	 * @return copy of the parameter list
+	 */
 	public List<Parameter> getAsParameters() {
+		List<Parameter> cached = parameters;
+		if (cached != null) return new ArrayList<>(cached);
 		List<Parameter> params = new ArrayList<>();
 
 		if (testEnvironment != null) {
@@ -221,26 +516,22 @@ public class TestProperties {
 			params.add(new Parameter().setName("test.env.url").setValue(testEnvironment.getUrl()));
 		}
 
-		Class<?> current = this.getClass();
-		while (current != null && current != Object.class) {
-			for (Field field : current.getDeclaredFields()) {
-				field.setAccessible(true);
-				if (field.isAnnotationPresent(Property.class) && !field.isAnnotationPresent(Hide.class)) {
-					String property = field.getAnnotation(Property.class).value();
-					try {
-						Object raw = field.get(this);
-						String value = (raw != null) ? raw.toString() : "";
-						params.add(new Parameter().setName(property).setValue(value));
-					} catch (IllegalAccessException e) {
-						// Handle or ignore field access errors
-						params.add(new Parameter().setName(property).setValue(""));
-					}
+		for (Field field : PROPERTY_FIELDS.get(this.getClass())) {
+			if (!field.isAnnotationPresent(Hide.class)) {
+				String property = field.getAnnotation(Property.class).value();
+				try {
+					Object raw = field.get(this);
+					String value = (raw != null) ? raw.toString() : "";
+					params.add(new Parameter().setName(property).setValue(value));
+				} catch (IllegalAccessException e) {
+					// Handle or ignore field access errors
+					params.add(new Parameter().setName(property).setValue(""));
 				}
 			}
-			current = current.getSuperclass();
 		}
 
-		return params;
+		parameters = Collections.unmodifiableList(params);
+		return new ArrayList<>(params);
 	}
 
 	public String getExtraCapabilities() {
@@ -249,10 +540,12 @@ public class TestProperties {
 
 	public void setExtraCapabilities(String capabilities) {
 		this.extraCapabilities = capabilities;
+		propertiesChanged();
 	}
 
 	public void replaceExtraCapabilities(String target, String replacement) {
 		extraCapabilities = extraCapabilities.replace(target, replacement);
+		propertiesChanged();
 	}
 
 	public String getHttpProxy() {
@@ -270,9 +563,39 @@ public class TestProperties {
 	public Integer getThreadCount() {
 		return threadCount;
 	}
+	/**
+	 * Thread count of the given suite from {@code test.parallel.threads.suites} (Ex: Smoke:2,Regression:8),
+	 * falls back to {@code test.parallel.threads}.
+	 */
+	public Integer getThreadCount(String suiteName) {
+		if (suiteThreadCounts != null) {
+			for (String entry : suiteThreadCounts.split(",")) {
+				int separator = entry.lastIndexOf(':');
+				if (separator > 0 && entry.substring(0, separator).trim().equals(suiteName)) {
+					return Integer.parseInt(entry.substring(separator + 1).trim());
+				}
+			}
+		}
+		return threadCount;
+	}
+	public int getSuiteThreads() {
+		return Math.max(1, suiteThreads);
+	}
 	public int getTestDefaultRetry() {
 		return testDefaultRetry;
 	}
+	public int getTestShards() {
+		return testShards;
+	}
+	public boolean isDynamicDispatch() {
+		return "dynamic".equalsIgnoreCase(shardsDispatch);
+	}
+	public int getShardIndex() {
+		return shardIndex;
+	}
+	public File getDurationHistoryFile() {
+		return durationHistoryFile;
+	}
 	public String getScreenSize() {
 		return screenSize;
 	}
@@ -285,5 +608,111 @@ public class TestProperties {
 	public boolean getHeadless() {
 		return headless;
 	}
+	public boolean isResultsAsync() {
+		return resultsAsync;
+	}
+	public int getResultsQueueSize() {
+		return resultsQueueSize;
+	}
+	public boolean isScreenshotAsync() {
+		return screenshotAsync;
+	}
+	public int getScreenshotThreads() {
+		return screenshotThreads;
+	}
+	public int getScreenshotMaxWidth() {
+		return screenshotMaxWidth;
+	}
+	public String getScreenshotFormat() {
+		return screenshotFormat;
+	}
+	public int getScreenshotQuality() {
+		return screenshotQuality;
+	}
+	public boolean isScreenshotDedupe() {
+		return screenshotDedupe;
+	}
+	public int getDriverPoolSize() {
+		return driverPoolSize;
+	}
+	public int getDriverPoolIdleTimeout() {
+		return driverPoolIdleTimeout;
+	}
+	public int getDriverPoolMaxAge() {
+		return driverPoolMaxAge;
+	}
+	public int getDriverPoolMaxUses() {
+		return driverPoolMaxUses;
+	}
+	public int getDriverPrewarmDepth() {
+		return driverPrewarmDepth;
+	}
+	public List<String> getSessionResetModes() {
+		List<String> modes = new ArrayList<>();
+		if (sessionResetModes != null) {
+			for (String mode : sessionResetModes.split(",")) {
+				if (!mode.trim().isEmpty()) modes.add(mode.trim().toLowerCase());
+			}
+		}
+		return modes;
+	}
+	public int getSessionMaxReuse() {
+		return sessionMaxReuse;
+	}
+	public int getMaxActiveDrivers() {
+		return maxActiveDrivers;
+	}
+	public int getMaxActiveTimeout() {
+		return maxActiveTimeout;
+	}
+	public int getCreatePermits() {
+		return createPermits;
+	}
+	public int getCreateRetries() {
+		return createRetries;
+	}
+	public long getCreateBackoff() {
+		return createBackoff;
+	}
+	public int getMinActiveDrivers() {
+		return minActiveDrivers;
+	}
+	public boolean isAdmissionAdaptive() {
+		return admissionAdaptive;
+	}
+	public int getAdmissionDriverMemory() {
+		return admissionDriverMemory;
+	}
+	public double getAdmissionMaxLoad() {
+		return admissionMaxLoad;
+	}
+	public boolean isQuitAsync() {
+		return quitAsync;
+	}
+	public int getQuitThreads() {
+		return quitThreads;
+	}
+	public int getQuitTimeout() {
+		return quitTimeout;
+	}
+	public int getQuitDrainTimeout() {
+		return quitDrainTimeout;
+	}
+	public int getUsersAcquireTimeout() {
+		return usersAcquireTimeout;
+	}
+	public File getUsersLeaseFolder() {
+		return usersLeaseFolder;
+	}
+
+	/**
+	 * Identifies WebDriver sessions which are interchangeable between tests.
+	 * Subclasses which add capability related properties should extend this value.
+	 */
+	public String getDriverFingerprint() {
+		return String.join("|", String.valueOf(browserType).toUpperCase(), String.valueOf(headless),
+				String.valueOf(screenSize), String.valueOf(httpProxy), String.valueOf(httpsProxy),
+				String.valueOf(acceptSSLCerts), String.valueOf(remoteURL), String.valueOf(extraCapabilities));
+	}
 
 }
\ No newline at end of file
@@ -13,6 +13,9 @@ Copyright 2010-2024 Michael Braiman braimanm@gmail.com
 
 package com.braimanm.uitaf.support;
 
+import com.braimanm.uitaf.RunTests;
+import com.braimanm.uitaf.testng.DurationOrderInterceptor;
+import com.braimanm.uitaf.testng.ResourceScheduler;
 import com.braimanm.uitaf.testng.TestParameterValidator;
 import io.qameta.allure.model.Parameter;
 import io.qameta.allure.util.PropertiesUtils;
@@ -21,8 +24,13 @@ import org.apache.commons.io.FileUtils;
 import org.testng.TestNG;
 
 import java.io.*;
-import java.util.List;
-import java.util.Properties;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
 
 @SuppressWarnings("unused")
 public class TestRunner {
@@ -52,15 +60,231 @@ public class TestRunner {
 				throw new RuntimeException("Suite file '" + suite + "' does not exists on the file system!");
 			}
 		}
+		int shards = TestContext.getTestProperties().getTestShards();
+		if (shards > 1) {
+			return runShards(suites, shards);
+		}
+		int status = runSuites(suites);
+		saveEnvironment();
+		recordDurations();
+		return status;
+	}
+
+	int runSuites(List<String> suites) {
 		TestNG testNg = new TestNG(false);
 		testNg.addListener(new TestParameterValidator());
+		testNg.addListener(new DurationOrderInterceptor());
+		testNg.addListener(new ResourceScheduler());
 		testNg.setTestSuites(suites);
-		testNg.setSuiteThreadPoolSize(1);
+		testNg.setSuiteThreadPoolSize(TestContext.getTestProperties().getSuiteThreads());
 		testNg.run();
-		saveEnvironment();
 		return testNg.getStatus();
 	}
 
+	private int runShards(List<String> suites, int shards) throws IOException {
+		List<SuiteUnits.Unit> units = SuiteUnits.split(suites);
+		File suitesFolder = Files.createTempDirectory("uitaf-shards").toFile();
+		List<Process> processes = new ArrayList<>();
+		List<File> shardFolders = new ArrayList<>();
+		Map<File, Long> abandoned = new HashMap<>();
+		Map<String, String> shardEnv = new HashMap<>();
+		TestProperties props = TestContext.getTestProperties();
+		if (props.getUsersLeaseFolder() == null) {
+			//Shards lease users from one folder so the same user group is not used by two shards
+			File leaseFolder = new File(suitesFolder, "user-leases");
+			FileUtils.forceMkdir(leaseFolder);
+			shardEnv.put("TEST_USERS_LEASE_DIR", leaseFolder.getAbsolutePath());
+		}
+		int status = 0;
+		try {
+			if (props.isDynamicDispatch()) {
+				checkClassPath(ShardWorker.class.getName());
+				status = dispatchUnits(units, shards, suitesFolder, processes, shardFolders, abandoned, shardEnv);
+			} else {
+				checkClassPath(RunTests.class.getName());
+				List<List<SuiteUnits.Unit>> assignment = assignShards(units, shards);
+				for (int i = 0; i < assignment.size(); i++) {
+					List<String> files = SuiteUnits.write(SuiteUnits.toSuites(assignment.get(i)), suitesFolder, "shard-" + i);
+					File shardFolder = new File(resultsFolder, "shard-" + i);
+					shardFolders.add(shardFolder);
+					Map<String, String> env = new HashMap<>(shardEnv);
+					env.put("TEST_SUITES", String.join(",", files));
+					processes.add(startShard(i, shardFolder, RunTests.class.getName(), Collections.emptyList(), env));
+				}
+				for (Process process : processes) {
+					status |= process.waitFor();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for test shards", e);
+		} finally {
+			processes.forEach(Process::destroy);
+			FileUtils.deleteQuietly(suitesFolder);
+		}
+		for (File shardFolder : shardFolders) {
+			mergeResults(shardFolder, abandoned.getOrDefault(shardFolder, Long.MAX_VALUE));
+		}
+		saveEnvironment();
+		recordDurations();
+		return status;
+	}
+
+	/**
+	 * Starts worker JVMs which pull batches of units one at a time, longest first, until all the batches
+	 * are executed. A batch holds up to thread count classes of one {@code <test>} so a worker runs them
+	 * with the parallel settings of the suite. Results written by a worker after it was given a batch it
+	 * never finished are dropped, the batch is executed again by another worker.
+	 */
+	private int dispatchUnits(List<SuiteUnits.Unit> units, int workers, File suitesFolder, List<Process> processes,
+							  List<File> workerFolders, Map<File, Long> abandoned, Map<String, String> shardEnv)
+			throws IOException, InterruptedException {
+		Map<SuiteUnits.Unit, Long> cost = estimateDurations(units);
+		List<SuiteUnits.Unit> sorted = new ArrayList<>(units);
+		sorted.sort(Comparator.comparingLong(cost::get).reversed());
+		TestProperties props = TestContext.getTestProperties();
+		List<List<SuiteUnits.Unit>> batches = SuiteUnits.batch(sorted, props::getThreadCount);
+		batches.sort(Comparator.comparingLong((List<SuiteUnits.Unit> batch) ->
+				batch.stream().mapToLong(cost::get).sum()).reversed());
+		List<ShardCoordinator.Item> items = new ArrayList<>();
+		for (List<SuiteUnits.Unit> batch : batches) {
+			List<String> files = SuiteUnits.write(SuiteUnits.toSuites(batch), suitesFolder, "unit-" + items.size());
+			items.add(new ShardCoordinator.Item(items.size(), batch.toString(), files));
+		}
+		try (ShardCoordinator coordinator = new ShardCoordinator(items)) {
+			List<String> args = Collections.singletonList(String.valueOf(coordinator.getPort()));
+			for (int i = 0; i < Math.min(workers, items.size()); i++) {
+				File workerFolder = new File(resultsFolder, "worker-" + i);
+				workerFolders.add(workerFolder);
+				processes.add(startShard(i, workerFolder, ShardWorker.class.getName(), args, shardEnv));
+			}
+			int status = coordinator.await(processes);
+			coordinator.getAbandoned().forEach((worker, since) -> abandoned.put(workerFolders.get(worker), since));
+			return status;
+		}
+	}
+
+	/**
+	 * Assigns units to shards longest first, each unit goes to the shard with the least expected
+	 * duration.
+	 */
+	private List<List<SuiteUnits.Unit>> assignShards(List<SuiteUnits.Unit> units, int shards) {
+		Map<SuiteUnits.Unit, Long> cost = estimateDurations(units);
+		List<SuiteUnits.Unit> sorted = new ArrayList<>(units);
+		sorted.sort(Comparator.comparingLong(cost::get).reversed());
+		int count = Math.min(shards, units.size());
+		List<List<SuiteUnits.Unit>> assignment = new ArrayList<>();
+		long[] load = new long[count];
+		for (int i = 0; i < count; i++) {
+			assignment.add(new ArrayList<>());
+		}
+		for (SuiteUnits.Unit unit : sorted) {
+			int shard = 0;
+			for (int i = 1; i < count; i++) {
+				if (load[i] < load[shard]) shard = i;
+			}
+			assignment.get(shard).add(unit);
+			load[shard] += cost.get(unit);
+		}
+		return assignment;
+	}
+
+	/**
+	 * Expected unit durations from the duration history, units without history are expected
+	 * to take the average time.
+	 */
+	private Map<SuiteUnits.Unit, Long> estimateDurations(List<SuiteUnits.Unit> units) {
+		DurationHistory history = DurationHistory.getInstance();
+		Map<SuiteUnits.Unit, Long> cost = new HashMap<>();
+		long known = 0;
+		int knownCount = 0;
+		for (SuiteUnits.Unit unit : units) {
+			long duration = (history == null || unit.getClassName() == null) ? -1 : history.getClassDuration(unit.getClassName());
+			cost.put(unit, duration);
+			if (duration >= 0) {
+				known += duration;
+				knownCount++;
+			}
+		}
+		long average = (knownCount == 0) ? 1 : Math.max(1, known / knownCount);
+		cost.replaceAll((unit, duration) -> (duration < 0) ? average : duration);
+		return cost;
+	}
+
+	private void recordDurations() {
+		DurationHistory history = DurationHistory.getInstance();
+		if (history != null && TestContext.getTestProperties().getShardIndex() < 0) {
+			history.record(new File(resultsFolder));
+		}
+	}
+
+	private Process startShard(int index, File shardResults, String mainClass, List<String> args,
+							   Map<String, String> extraEnv) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!arg.contains("jdwp")) {
+				command.add(arg);
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(mainClass);
+		command.addAll(args);
+		ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+		Map<String, String> env = builder.environment();
+		setEnv(env, "TEST_SHARDS", "1");
+		setEnv(env, "TEST_SHARD_INDEX", String.valueOf(index));
+		setEnv(env, "REPORT_SHOW", "false");
+		setEnv(env, "REPORT_RESULTS", shardResults.getAbsolutePath());
+		extraEnv.forEach((name, value) -> setEnv(env, name, value));
+		return builder.start();
+	}
+
+	/**
+	 * Shard JVMs are started with the class path of this JVM, which does not hold the framework
+	 * when the tests were launched in-process (e.g. exec:java or a custom class loader).
+	 */
+	private static void checkClassPath(String mainClass) {
+		List<URL> urls = new ArrayList<>();
+		try {
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+				if (!entry.isEmpty()) {
+					urls.add(new File(entry).toURI().toURL());
+				}
+			}
+		} catch (MalformedURLException e) {
+			throw new RuntimeException("Invalid java.class.path entry", e);
+		}
+		try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader())) {
+			Class.forName(mainClass, false, loader);
+		} catch (ClassNotFoundException | LinkageError | IOException e) {
+			throw new RuntimeException("Test shards can not be started, " + mainClass + " is not on the class path of this JVM ("
+					+ "java.class.path). Run the tests with the java command instead of in-process (exec:java, custom "
+					+ "class loader) or set test.shards to 1", e);
+		}
+	}
+
+	private static void setEnv(Map<String, String> env, String name, String value) {
+		env.keySet().removeIf(name::equalsIgnoreCase);
+		env.put(name, value);
+	}
+
+	/**
+	 * Copies results of the shard to the results folder.
+	 * @param before - files modified at or after this time are dropped
+	 */
+	private void mergeResults(File shardFolder, long before) throws IOException {
+		File[] files = shardFolder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile() && !file.getName().equals("environment.properties") && file.lastModified() < before) {
+					FileUtils.copyFileToDirectory(file, new File(resultsFolder));
+				}
+			}
+		}
+		FileUtils.deleteQuietly(shardFolder);
+	}
 
 	private void saveEnvironment() throws IOException {
 		TestProperties props = TestContext.getTestProperties();
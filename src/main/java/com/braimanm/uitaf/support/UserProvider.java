@@ -13,18 +13,47 @@ Copyright 2010-2024 Michael Braiman braimanm@gmail.com
 
 package com.braimanm.uitaf.support;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Hands out groups of environment users to the running tests. A group is leased with
+ * {@link #acquire()} and returned with {@link Lease#close()}, or bound to the current test by
+ * {@link #getUsers()} and returned by {@link #release()} when the test completes.
+ * When {@code test.users.lease.dir} is set, each leased group is also locked with a file lock in
+ * that folder, so JVMs running on the same host never use the same group at the same time.
+ * File locks are released by the operating system when the owning process dies.
+ */
 @SuppressWarnings("unused")
 public class UserProvider {
-    private static UserProvider instance = null;
-    private final ConcurrentMap<Thread, List<EnvironmentsSetup.User>> users = new ConcurrentHashMap<>();
-    private final Iterator<List<EnvironmentsSetup.User>> iterator;
+    private static volatile UserProvider instance = null;
+    private final List<String> groupNames = new ArrayList<>();
+    private final List<List<EnvironmentsSetup.User>> groups = new ArrayList<>();
+    private final BlockingDeque<Integer> free = new LinkedBlockingDeque<>();
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Lease> current = new ThreadLocal<>();
+    private final File leaseFolder;
+    private final String environmentName;
 
     private UserProvider() {
-        EnvironmentsSetup.Environment env = TestContext.getTestProperties().getTestEnvironment();
+        this(TestContext.getTestProperties().getTestEnvironment(), TestContext.getTestProperties().getUsersLeaseFolder());
+    }
+
+    UserProvider(EnvironmentsSetup.Environment env, File leaseFolder) {
+        environmentName = env.getEnvironmentName();
+        this.leaseFolder = leaseFolder;
+        if (leaseFolder != null && !leaseFolder.isDirectory() && !leaseFolder.mkdirs()) {
+            throw new RuntimeException("Failed to create users lease folder " + leaseFolder.getAbsolutePath());
+        }
         SortedMap<String,List<EnvironmentsSetup.User>> usersGroups = new TreeMap<>();
         int groupI = 0;
         for (EnvironmentsSetup.User u : env.getUsers()) {
@@ -42,54 +71,132 @@ public class UserProvider {
                 usersGroups.get(group).add(u);
             }
         }
-        iterator = usersGroups.values().iterator();
+        for (Map.Entry<String, List<EnvironmentsSetup.User>> group : usersGroups.entrySet()) {
+            free.addLast(groups.size());
+            groupNames.add(group.getKey());
+            groups.add(Collections.unmodifiableList(group.getValue()));
+        }
     }
 
-    public static synchronized UserProvider getInstance() {
+    public static UserProvider getInstance() {
         if (instance == null) {
-            instance = new UserProvider();
+            synchronized (UserProvider.class) {
+                if (instance == null) {
+                    instance = new UserProvider();
+                }
+            }
         }
         return instance;
     }
 
-    public synchronized EnvironmentsSetup.User getUser(String role) {
-        for (EnvironmentsSetup.User user : getUsers()) {
-            if (user.getRole().endsWith(role)) {
-                return user;
+    /**
+     * Returns the users group bound to the current test to the pool.
+     */
+    public static void release() {
+        UserProvider provider = instance;
+        if (provider != null) {
+            Lease lease = provider.current.get();
+            provider.current.remove();
+            if (lease != null) {
+                lease.close();
             }
         }
-        throw new RuntimeException("User with role '" + role + "' was not found in environments file!");
     }
 
-    private Thread getDeadThread() {
-        for (Thread t : users.keySet()) {
-            if (!t.isAlive()) return t;
+    /**
+     * Leases a free users group waiting up to {@code test.users.acquire.timeout} seconds.
+     * @return lease which must be closed when the users are not needed anymore
+     */
+    public Lease acquire() {
+        return acquire(TestContext.getTestProperties().getUsersAcquireTimeout(), TimeUnit.SECONDS);
+    }
+
+    public Lease acquire(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, timeout));
+        try {
+            while (true) {
+                int attempts = free.size();
+                do {
+                    long wait = deadline - System.nanoTime();
+                    Integer group = (wait > 0) ? free.pollFirst(wait, TimeUnit.NANOSECONDS) : free.pollFirst();
+                    if (group == null) break;
+                    Lease lease = tryLease(group);
+                    if (lease != null) {
+                        leased.add(lease);
+                        return lease;
+                    }
+                    free.addLast(group);
+                } while (--attempts > 0);
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0) break;
+                //All free groups are locked by other processes
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(250)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free users group", e);
+        }
+        if (timeout > 0) {
+            throw new RuntimeException("No users group became free within " + unit.toSeconds(timeout) + " seconds, " +
+                    "please add more users to environments file or increase test.users.acquire.timeout.");
+        }
+        throw new RuntimeException("Please add more users to environments file for running the tests in parallel.");
+    }
+
+    private Lease tryLease(int group) {
+        if (leaseFolder == null) {
+            return new Lease(group, null);
         }
+        String name = (environmentName + "-" + groupNames.get(group)).replaceAll("[^A-Za-z0-9._-]", "_");
+        File file = new File(leaseFolder, name + ".lock");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new Lease(group, lock);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            throw new RuntimeException("Failed to lock users group file " + file.getAbsolutePath(), e);
+        }
+        closeQuietly(channel);
         return null;
     }
 
-    public synchronized List<EnvironmentsSetup.User> getUsers() {
-        Thread t = Thread.currentThread();
-        if (!users.containsKey(t)) {
-            Thread td = getDeadThread();
-            if (td != null) {
-                users.put(t, users.get(td));
-                users.remove(td);
-            } else {
-                if (!iterator.hasNext()) {
-                    throw new RuntimeException("Please add more users to environments file for running the tests in parallel.");
-                }
-                users.put(t, iterator.next());
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException ignore) {
+            //lock is released with the channel
+        }
+    }
+
+    public EnvironmentsSetup.User getUser(String role) {
+        for (EnvironmentsSetup.User user : getUsers()) {
+            if (user.getRole().endsWith(role)) {
+                return user;
             }
         }
-        return users.get(t);
+        throw new RuntimeException("User with role '" + role + "' was not found in environments file!");
     }
 
+    /**
+     * @return users group bound to the current test, the group is leased on first call
+     */
+    public List<EnvironmentsSetup.User> getUsers() {
+        Lease lease = current.get();
+        if (lease == null || lease.isReleased()) {
+            lease = acquire();
+            current.set(lease);
+        }
+        return lease.getUsers();
+    }
 
     public List<String> getAllUsedRoles() {
         List<String> roles = new ArrayList<>();
-        for (List<EnvironmentsSetup.User> us : users.values()) {
-            for (EnvironmentsSetup.User u : us) {
+        for (Lease lease : leased) {
+            for (EnvironmentsSetup.User u : lease.getUsers()) {
                 roles.add(u.getRole());
             }
         }
@@ -98,6 +205,45 @@ public class UserProvider {
 
     @Override
     public String toString() {
-        return users.toString();
+        return leased.toString();
+    }
+
+    public class Lease implements AutoCloseable {
+        private final int group;
+        private final FileLock lock;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(int group, FileLock lock) {
+            this.group = group;
+            this.lock = lock;
+        }
+
+        public String getGroupName() {
+            return groupNames.get(group);
+        }
+
+        public List<EnvironmentsSetup.User> getUsers() {
+            return groups.get(group);
+        }
+
+        public boolean isReleased() {
+            return released.get();
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                leased.remove(this);
+                if (lock != null) {
+                    closeQuietly(lock.channel());
+                }
+                free.addFirst(group);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getGroupName() + "=" + getUsers();
+        }
     }
 }
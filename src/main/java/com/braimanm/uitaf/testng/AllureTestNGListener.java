@@ -13,6 +13,9 @@ Copyright 2010-2024 Michael Braiman braimanm@gmail.com
 
 package com.braimanm.uitaf.testng;
 
+import com.braimanm.uitaf.support.AsyncResultsWriter;
+import com.braimanm.uitaf.support.ScreenshotPipeline;
+import com.braimanm.uitaf.support.SessionRecycler;
 import com.braimanm.uitaf.support.TestContext;
 import io.qameta.allure.*;
 import io.qameta.allure.model.Link;
@@ -30,12 +33,17 @@ import org.testng.internal.ConstructorOrMethod;
 import org.testng.xml.XmlSuite;
 import org.testng.xml.XmlTest;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static io.qameta.allure.util.ResultsUtils.*;
@@ -52,10 +60,30 @@ public class AllureTestNGListener implements
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(AllureTestNGListener.class);
 	private static final String ALLURE_UUID = "ALLURE_UUID";
+	private static final AtomicInteger RUNNING_SUITES = new AtomicInteger();
 	private static final List<Class<?>> INJECTED_TYPES = Arrays.asList(
 			ITestContext.class, ITestResult.class, XmlTest.class, Method.class, Object[].class
 	);
 
+	private static final List<Label> PROVIDED_LABELS = new ArrayList<>(getProvidedLabels());
+	private static final Label HOST_LABEL = createHostLabel();
+	private static final ClassValue<Map<Method, MethodMetadata>> METADATA = new ClassValue<Map<Method, MethodMetadata>>() {
+		@Override
+		protected Map<Method, MethodMetadata> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private static final ClassValue<List<InstanceParameter>> INSTANCE_PARAMETERS = new ClassValue<List<InstanceParameter>>() {
+		@Override
+		protected List<InstanceParameter> computeValue(final Class<?> type) {
+			return getInstanceParameters(type);
+		}
+	};
+	private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(ResultsUtils::getMd5Digest);
+	private static final Comparator<Parameter> PARAMETER_ORDER =
+			comparing(Parameter::getName).thenComparing(Parameter::getValue);
+
 	private static String safeExtractSuiteName(final ITestClass testClass) {
 		final Optional<XmlTest> xmlTest = Optional.ofNullable(testClass.getXmlTest());
 		return xmlTest.map(XmlTest::getSuite).map(XmlSuite::getName).orElse("Undefined suite");
@@ -83,7 +111,7 @@ public class AllureTestNGListener implements
 	}
 
 	public AllureTestNGListener() {
-		this(Allure.getLifecycle());
+		this(AsyncResultsWriter.getLifecycle());
 	}
 
 	public AllureLifecycle getLifecycle() {
@@ -92,7 +120,8 @@ public class AllureTestNGListener implements
 
 	@Override
 	public void onStart(final ISuite suite) {
-		Integer threadCount = TestContext.getTestProperties().getThreadCount();
+		RUNNING_SUITES.incrementAndGet();
+		Integer threadCount = TestContext.getTestProperties().getThreadCount(suite.getName());
 		if (threadCount != null) {
 			suite.getXmlSuite().setThreadCount(threadCount);
 		}
@@ -108,6 +137,14 @@ public class AllureTestNGListener implements
 		final String uuid = getUniqueUuid(suite);
 		getLifecycle().stopTestContainer(uuid);
 		getLifecycle().writeTestContainer(uuid);
+		ScreenshotPipeline.drainPending();
+		AsyncResultsWriter.flushPending();
+		//Drivers are shared by all the suites, release them when the last running suite is done
+		if (RUNNING_SUITES.decrementAndGet() == 0) {
+			TestContext.discardPrewarmedDrivers();
+			SessionRecycler.closeKeptSessions();
+			TestContext.drainClosingDrivers();
+		}
 	}
 
 
@@ -148,6 +185,7 @@ public class AllureTestNGListener implements
 		final String uuid = getUniqueUuid(context);
 		getLifecycle().stopTestContainer(uuid);
 		getLifecycle().writeTestContainer(uuid);
+		SessionRecycler.closeKeptSessions(context);
 	}
 
 
@@ -179,46 +217,37 @@ public class AllureTestNGListener implements
 								 final String parentUuid,
 								 final String uuid) {
 		final ITestClass testClass = method.getTestClass();
-		final List<Label> labels = new ArrayList<>();
-		labels.addAll(getProvidedLabels());
+		final MethodMetadata metadata = getMetadata(method, iClass);
+		final List<Label> labels = new ArrayList<>(metadata.labels.size() + 4);
+		labels.addAll(metadata.labels);
 		labels.addAll(Arrays.asList(
-				//Packages grouping
-				createPackageLabel(testClass.getName()),
-				createTestClassLabel(testClass.getName()),
-				createTestMethodLabel(method.getMethodName()),
-
 				//xUnit grouping
 				createParentSuiteLabel(safeExtractSuiteName(testClass)),
 				createSuiteLabel(safeExtractTestTag(testClass)),
 				createSubSuiteLabel(safeExtractTestClassName(testClass)),
 
 				//Timeline grouping
-				createHostLabel(),
-				createThreadLabel(),
-
-				createFrameworkLabel("testng"),
-				createLanguageLabel("java")
+				createThreadLabel()
 		));
-		labels.addAll(getLabels(method, iClass));
-		final List<Parameter> parameters = getParameters(context, method, params);
+		final List<Parameter> parameters = getParameters(context, metadata, method, params);
 		final TestResult result = new TestResult()
 				.setUuid(uuid)
 				.setHistoryId(getHistoryId(method, parameters))
 				.setName(getMethodName(method))
 				.setFullName(getQualifiedName(method))
 				.setStatusDetails(new StatusDetails()
-						.setFlaky(isFlaky(method, iClass))
-						.setMuted(isMuted(method, iClass)))
+						.setFlaky(metadata.flaky)
+						.setMuted(metadata.muted))
 				.setParameters(parameters)
-				.setLinks(getLinks(method, iClass))
+				.setLinks(new ArrayList<>(metadata.links))
 				.setLabels(labels);
 
-		processDescription(
-				getClass().getClassLoader(),
-				method.getConstructorOrMethod().getMethod(),
-				result::setDescription,
-				result::setDescriptionHtml
-		);
+		if (metadata.description != null) {
+			result.setDescription(metadata.description);
+		}
+		if (metadata.descriptionHtml != null) {
+			result.setDescriptionHtml(metadata.descriptionHtml);
+		}
 
 		getLifecycle().scheduleTestCase(parentUuid, result);
 		getLifecycle().startTestCase(uuid);
@@ -241,6 +270,7 @@ public class AllureTestNGListener implements
 		final Throwable throwable = testResult.getThrowable();
 		final Status status = getStatus(throwable);
 		TestNGBase.takeScreenshot("Screenshot");
+		SessionRecycler.markFailed();
 		stopTestCase(uuid, throwable, status);
 	}
 
@@ -259,6 +289,7 @@ public class AllureTestNGListener implements
 		final String uuid = getUniqueUuid(testResult);
 		if (testResult.getMethod().getRetryAnalyzerClass() != null) {
 			TestNGBase.takeScreenshot("Screenshot");
+			SessionRecycler.markFailed();
 		}
 		stopTestCase(uuid, testResult.getThrowable(), Status.SKIPPED);
 	}
@@ -334,6 +365,7 @@ public class AllureTestNGListener implements
 
 	@Override
 	public void onConfigurationFailure(final ITestResult itr) {
+		SessionRecycler.markFailed();
 		String uuid = getUniqueUuid(itr);
 		if (!itr.getMethod().getMethodName().matches("_.*_")) {
 			final StatusDetails details = getStatusDetails(itr.getThrowable()).orElse(null);
@@ -369,17 +401,17 @@ public class AllureTestNGListener implements
 	}
 
 	protected String getHistoryId(final ITestNGMethod method, final List<Parameter> parameters) {
-		final MessageDigest digest = getMd5Digest();
+		final MessageDigest digest = MD5.get();
 		final String testClassName = method.getTestClass().getName();
 		final String methodName = method.getMethodName();
 		digest.update(testClassName.getBytes(UTF_8));
 		digest.update(methodName.getBytes(UTF_8));
-		parameters.stream()
-				.sorted(comparing(Parameter::getName).thenComparing(Parameter::getValue))
-				.forEachOrdered(parameter -> {
-					digest.update(parameter.getName().getBytes(UTF_8));
-					digest.update(parameter.getValue().getBytes(UTF_8));
-				});
+		final Parameter[] sorted = parameters.toArray(new Parameter[0]);
+		Arrays.sort(sorted, PARAMETER_ORDER);
+		for (Parameter parameter : sorted) {
+			digest.update(parameter.getName().getBytes(UTF_8));
+			digest.update(parameter.getValue().getBytes(UTF_8));
+		}
 		final byte[] bytes = digest.digest();
 		return bytesToHex(bytes);
 	}
@@ -388,6 +420,41 @@ public class AllureTestNGListener implements
 		return ResultsUtils.getStatus(throwable).orElse(Status.BROKEN);
 	}
 
+	private MethodMetadata getMetadata(final ITestNGMethod method, final IClass iClass) {
+		final Optional<Method> javaMethod = getMethod(method);
+		final Optional<Class<?>> javaClass = getClass(iClass);
+		if (!javaMethod.isPresent() || !javaClass.isPresent()) {
+			return createMetadata(method, iClass);
+		}
+		return METADATA.get(javaClass.get()).computeIfAbsent(javaMethod.get(), m -> createMetadata(method, iClass));
+	}
+
+	private MethodMetadata createMetadata(final ITestNGMethod method, final IClass iClass) {
+		final ITestClass testClass = method.getTestClass();
+		final List<Label> labels = new ArrayList<>(PROVIDED_LABELS);
+		labels.addAll(Arrays.asList(
+				//Packages grouping
+				createPackageLabel(testClass.getName()),
+				createTestClassLabel(testClass.getName()),
+				createTestMethodLabel(method.getMethodName()),
+
+				HOST_LABEL,
+				createFrameworkLabel("testng"),
+				createLanguageLabel("java")
+		));
+		labels.addAll(getLabels(method, iClass));
+		final String[] description = new String[2];
+		processDescription(
+				getClass().getClassLoader(),
+				method.getConstructorOrMethod().getMethod(),
+				value -> description[0] = value,
+				value -> description[1] = value
+		);
+		final String[] parameterNames = getMethod(method).map(AllureTestNGListener::getParameterNames).orElse(null);
+		return new MethodMetadata(labels, getLinks(method, iClass), isFlaky(method, iClass),
+				isMuted(method, iClass), description[0], description[1], parameterNames);
+	}
+
 	private List<Label> getLabels(final ITestNGMethod method, final IClass iClass) {
 		final List<Label> labels = new ArrayList<>();
 		getMethod(method)
@@ -462,69 +529,87 @@ public class AllureTestNGListener implements
 	}
 
 	private List<Parameter> getParameters(final ITestContext context,
+										  final MethodMetadata metadata,
 										  final ITestNGMethod method,
 										  final Object... parameters) {
-		final Map<String, String> result = new HashMap<>(
-				context.getCurrentXmlTest().getAllParameters()
-		);
+		final Map<String, String> xmlParameters = getXmlParameters(context.getCurrentXmlTest());
+		final Map<String, String> result = new HashMap<>((xmlParameters.size() + parameters.length) * 2);
+		result.putAll(xmlParameters);
 		final Object instance = method.getInstance();
 		if (nonNull(instance)) {
-			Stream.of(instance.getClass().getDeclaredFields())
-					.filter(field -> field.isAnnotationPresent(TestInstanceParameter.class))
-					.forEach(field -> {
-						final String name = Optional.ofNullable(field.getAnnotation(TestInstanceParameter.class))
-								.map(TestInstanceParameter::value)
-								.filter(s -> !s.isEmpty())
-								.orElseGet(field::getName);
-						try {
-							field.setAccessible(true);
-							final String value = ObjectUtils.toString(field.get(instance));
-							result.put(name, value);
-						} catch (IllegalAccessException e) {
-							LOGGER.debug("Could not access field value");
-						}
-					});
-		}
-
-		getMethod(method).ifPresent(m -> {
-			final Class<?>[] parameterTypes = m.getParameterTypes();
-
-			if (parameterTypes.length != parameters.length) {
-				return;
+			for (InstanceParameter parameter : INSTANCE_PARAMETERS.get(instance.getClass())) {
+				try {
+					result.put(parameter.name, ObjectUtils.toString(parameter.getter.invoke(instance)));
+				} catch (Throwable e) {
+					LOGGER.debug("Could not access field value");
+				}
 			}
+		}
 
-			final String[] providedNames = Optional.ofNullable(m.getAnnotation(Parameters.class))
-					.map(Parameters::value)
-					.orElse(new String[]{});
-
-			final String[] reflectionNames = Stream.of(m.getParameters())
-					.map(java.lang.reflect.Parameter::getName)
-					.toArray(String[]::new);
-
-			int skippedCount = 0;
-			for (int i = 0; i < parameterTypes.length; i++) {
-				final Class<?> parameterType = parameterTypes[i];
-				if (INJECTED_TYPES.contains(parameterType)) {
-					skippedCount++;
-					continue;
+		final String[] names = metadata.parameterNames;
+		if (names != null && names.length == parameters.length) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i] != null) {
+					result.put(names[i], ObjectUtils.toString(parameters[i]));
 				}
+			}
+		}
 
-				final int indexFromAnnotation = i - skippedCount;
-				if (indexFromAnnotation < providedNames.length) {
-					result.put(providedNames[indexFromAnnotation], ObjectUtils.toString(parameters[i]));
-					continue;
-				}
+		final List<Parameter> list = new ArrayList<>(result.size());
+		result.forEach((name, value) -> list.add(createParameter(name, value)));
+		return list;
+	}
 
-				if (i < reflectionNames.length) {
-					result.put(reflectionNames[i], ObjectUtils.toString(parameters[i]));
-				}
+	private static Map<String, String> getXmlParameters(final XmlTest xmlTest) {
+		if (xmlTest == null) {
+			return Collections.emptyMap();
+		}
+		return xmlTest.getAllParameters();
+	}
+
+	private static String[] getParameterNames(final Method method) {
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+		final String[] providedNames = Optional.ofNullable(method.getAnnotation(Parameters.class))
+				.map(Parameters::value)
+				.orElse(new String[]{});
+		final java.lang.reflect.Parameter[] reflectionParameters = method.getParameters();
+		final String[] names = new String[parameterTypes.length];
+
+		int skippedCount = 0;
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (INJECTED_TYPES.contains(parameterTypes[i])) {
+				skippedCount++;
+				continue;
 			}
 
-		});
+			final int indexFromAnnotation = i - skippedCount;
+			if (indexFromAnnotation < providedNames.length) {
+				names[i] = providedNames[indexFromAnnotation];
+			} else if (i < reflectionParameters.length) {
+				names[i] = reflectionParameters[i].getName();
+			}
+		}
+		return names;
+	}
 
-		return result.entrySet().stream()
-				.map(entry -> createParameter(entry.getKey(), entry.getValue()))
-				.collect(Collectors.toList());
+	private static List<InstanceParameter> getInstanceParameters(final Class<?> type) {
+		final List<InstanceParameter> result = new ArrayList<>();
+		for (Field field : type.getDeclaredFields()) {
+			final TestInstanceParameter annotation = field.getAnnotation(TestInstanceParameter.class);
+			if (annotation == null) {
+				continue;
+			}
+			final String name = annotation.value().isEmpty() ? field.getName() : annotation.value();
+			try {
+				field.setAccessible(true);
+				final MethodHandle getter = MethodHandles.lookup().unreflectGetter(field)
+						.asType(MethodType.methodType(Object.class, Object.class));
+				result.add(new InstanceParameter(name, getter));
+			} catch (Exception e) {
+				LOGGER.debug("Could not access field " + field.getName());
+			}
+		}
+		return Collections.unmodifiableList(result);
 	}
 
 	private String getMethodName(final ITestNGMethod method) {
@@ -549,5 +634,43 @@ public class AllureTestNGListener implements
 		};
 	}
 
+	/**
+	 * Test method data which does not change between invocations: annotation based labels,
+	 * links, flaky and muted flags, description and parameter names.
+	 */
+	private static final class MethodMetadata {
+		private final List<Label> labels;
+		private final List<Link> links;
+		private final boolean flaky;
+		private final boolean muted;
+		private final String description;
+		private final String descriptionHtml;
+		private final String[] parameterNames;
+
+		private MethodMetadata(final List<Label> labels, final List<Link> links, final boolean flaky,
+							   final boolean muted, final String description, final String descriptionHtml,
+							   final String[] parameterNames) {
+			this.labels = Collections.unmodifiableList(labels);
+			this.links = Collections.unmodifiableList(links);
+			this.flaky = flaky;
+			this.muted = muted;
+			this.description = description;
+			this.descriptionHtml = descriptionHtml;
+			this.parameterNames = parameterNames;
+		}
+	}
+
+	/**
+	 * Precompiled accessor of a test instance field annotated with {@link TestInstanceParameter}.
+	 */
+	private static final class InstanceParameter {
+		private final String name;
+		private final MethodHandle getter;
+
+		private InstanceParameter(final String name, final MethodHandle getter) {
+			this.name = name;
+			this.getter = getter;
+		}
+	}
 
 }
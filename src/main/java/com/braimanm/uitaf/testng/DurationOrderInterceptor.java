@@ -0,0 +1,60 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.testng;
+
+import com.braimanm.uitaf.support.DurationHistory;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+
+import java.util.*;
+
+/**
+ * Orders test classes by their duration in the previous runs, longest first, so that long tests
+ * do not start at the end of the run. Methods of a class keep their order and methods with a lower
+ * priority still run first, classes are ordered within each priority. Methods without history are
+ * expected to take the average duration. The original order is kept when {@code test.duration.history}
+ * is not configured. Registered by {@link com.braimanm.uitaf.support.TestRunner}.
+ */
+public class DurationOrderInterceptor implements IMethodInterceptor {
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        DurationHistory history = DurationHistory.getInstance();
+        if (history == null || history.isEmpty()) return methods;
+        long average = history.getAverageMethodDuration();
+        Map<Integer, Map<Class<?>, List<IMethodInstance>>> priorities = new TreeMap<>();
+        for (IMethodInstance instance : methods) {
+            ITestNGMethod method = instance.getMethod();
+            priorities.computeIfAbsent(method.getPriority(), p -> new LinkedHashMap<>())
+                    .computeIfAbsent(method.getRealClass(), c -> new ArrayList<>()).add(instance);
+        }
+        List<IMethodInstance> ordered = new ArrayList<>(methods.size());
+        for (Map<Class<?>, List<IMethodInstance>> classes : priorities.values()) {
+            List<List<IMethodInstance>> sorted = new ArrayList<>(classes.values());
+            sorted.sort(Comparator.comparingLong((List<IMethodInstance> instances) -> instances.stream()
+                    .mapToLong(instance -> {
+                        long duration = history.getMethodDuration(getFullName(instance.getMethod()));
+                        return (duration < 0) ? average : duration;
+                    }).sum()).reversed());
+            sorted.forEach(ordered::addAll);
+        }
+        return ordered;
+    }
+
+    private static String getFullName(ITestNGMethod method) {
+        return method.getRealClass().getName() + "." + method.getMethodName();
+    }
+}
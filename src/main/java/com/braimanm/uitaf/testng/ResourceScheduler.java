@@ -0,0 +1,159 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.testng;
+
+import org.testng.*;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Schedules tests annotated with {@link TestResources}. Annotated tests are ordered so that tests which
+ * use the same resource are spread over the run, and before invocation each test waits until all of its
+ * resources can be taken at once. Tests without resources keep their order and are never delayed.
+ * Registered by {@link com.braimanm.uitaf.support.TestRunner}, other runners add it with {@code @Listeners}.
+ */
+public class ResourceScheduler implements IMethodInterceptor, IInvokedMethodListener {
+    private static final String CLAIM = "UITAF_RESOURCE_CLAIM";
+    private static final Claim NONE = new Claim(Collections.emptySet(), Collections.emptySet());
+    private final Map<Method, Claim> claims = new ConcurrentHashMap<>();
+    private final Map<String, Integer> readers = new HashMap<>();
+    private final Set<String> writers = new HashSet<>();
+    private final Map<String, Integer> waitingWriters = new HashMap<>();
+
+    @Override
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        Map<Integer, List<Integer>> slots = new HashMap<>();
+        Map<Integer, Map<String, Deque<IMethodInstance>>> buckets = new HashMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            IMethodInstance instance = methods.get(i);
+            Claim claim = getClaim(instance.getMethod());
+            if (claim == NONE) continue;
+            int priority = instance.getMethod().getPriority();
+            slots.computeIfAbsent(priority, p -> new ArrayList<>()).add(i);
+            buckets.computeIfAbsent(priority, p -> new LinkedHashMap<>())
+                    .computeIfAbsent(claim.primary(), k -> new ArrayDeque<>()).add(instance);
+        }
+        if (slots.isEmpty()) return methods;
+        //Round robin over resources keeps tests using the same resource apart, the annotated tests
+        //take the places of annotated tests with the same priority so the other tests are not moved
+        List<IMethodInstance> ordered = new ArrayList<>(methods);
+        slots.forEach((priority, places) -> {
+            Iterator<Integer> place = places.iterator();
+            while (place.hasNext()) {
+                for (Deque<IMethodInstance> bucket : buckets.get(priority).values()) {
+                    if (!bucket.isEmpty()) {
+                        ordered.set(place.next(), bucket.poll());
+                    }
+                }
+            }
+        });
+        return ordered;
+    }
+
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        if (!method.isTestMethod()) return;
+        Claim claim = getClaim(method.getTestMethod());
+        if (claim == NONE) return;
+        try {
+            acquire(claim);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for test resources " + claim, e);
+        }
+        testResult.setAttribute(CLAIM, claim);
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+        Object claim = testResult.getAttribute(CLAIM);
+        if (claim != null) {
+            testResult.removeAttribute(CLAIM);
+            release((Claim) claim);
+        }
+    }
+
+    private synchronized void acquire(Claim claim) throws InterruptedException {
+        claim.exclusive.forEach(r -> waitingWriters.merge(r, 1, Integer::sum));
+        try {
+            while (!isAvailable(claim)) {
+                wait();
+            }
+        } finally {
+            claim.exclusive.forEach(r -> waitingWriters.computeIfPresent(r, (k, v) -> (v == 1) ? null : v - 1));
+        }
+        writers.addAll(claim.exclusive);
+        claim.shared.forEach(r -> readers.merge(r, 1, Integer::sum));
+    }
+
+    private boolean isAvailable(Claim claim) {
+        for (String resource : claim.exclusive) {
+            if (writers.contains(resource) || readers.containsKey(resource)) return false;
+        }
+        for (String resource : claim.shared) {
+            //Shared claims give way to waiting exclusive claims, so exclusive tests do not starve
+            if (writers.contains(resource) || waitingWriters.containsKey(resource)) return false;
+        }
+        return true;
+    }
+
+    private synchronized void release(Claim claim) {
+        writers.removeAll(claim.exclusive);
+        claim.shared.forEach(r -> readers.computeIfPresent(r, (k, v) -> (v == 1) ? null : v - 1));
+        notifyAll();
+    }
+
+    private Claim getClaim(ITestNGMethod testMethod) {
+        Method method = testMethod.getConstructorOrMethod().getMethod();
+        if (method == null) return NONE;
+        return claims.computeIfAbsent(method, m -> {
+            Set<String> exclusive = new TreeSet<>();
+            Set<String> shared = new TreeSet<>();
+            for (TestResources resources : new TestResources[]{
+                    m.getDeclaringClass().getAnnotation(TestResources.class),
+                    ((Class<?>) testMethod.getRealClass()).getAnnotation(TestResources.class),
+                    m.getAnnotation(TestResources.class)}) {
+                if (resources != null) {
+                    exclusive.addAll(Arrays.asList(resources.exclusive()));
+                    shared.addAll(Arrays.asList(resources.shared()));
+                }
+            }
+            shared.removeAll(exclusive);
+            return (exclusive.isEmpty() && shared.isEmpty()) ? NONE : new Claim(exclusive, shared);
+        });
+    }
+
+    private static class Claim {
+        private final Set<String> exclusive;
+        private final Set<String> shared;
+
+        private Claim(Set<String> exclusive, Set<String> shared) {
+            this.exclusive = exclusive;
+            this.shared = shared;
+        }
+
+        private String primary() {
+            if (!exclusive.isEmpty()) return exclusive.iterator().next();
+            if (!shared.isEmpty()) return shared.iterator().next();
+            return "";
+        }
+
+        @Override
+        public String toString() {
+            return "exclusive=" + exclusive + ", shared=" + shared;
+        }
+    }
+}
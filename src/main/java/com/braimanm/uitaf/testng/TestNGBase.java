@@ -15,7 +15,10 @@ package com.braimanm.uitaf.testng;
 
 import com.braimanm.datainstiller.data.DataPersistence;
 import com.braimanm.ui.auto.context.WebDriverContext;
+import com.braimanm.uitaf.support.ScreenshotPipeline;
+import com.braimanm.uitaf.support.SessionRecycler;
 import com.braimanm.uitaf.support.TestContext;
+import com.braimanm.uitaf.support.UserProvider;
 import io.qameta.allure.Allure;
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.OutputType;
@@ -53,19 +56,22 @@ public class TestNGBase {
 	}
 
 	protected void closeDriver() {
+		SessionRecycler.forget(TestContext.DEFAULT);
 		TestContext.removeContext();
 	}
 
 	protected void closeDriver(String contextName) {
+		SessionRecycler.forget(contextName);
 		TestContext.removeContext(contextName);
 	}
 
-	public synchronized static void takeScreenshot(String contextName, String title) {
-        if (TestContext.getContext(contextName) != null) {
-        	try {
-				TakesScreenshot takesScreenshot = (TakesScreenshot) TestContext.getContext(contextName).getDriver();
+	public static void takeScreenshot(String contextName, String title) {
+		WebDriverContext context = TestContext.getContext(contextName);
+		if (context != null) {
+			try {
+				TakesScreenshot takesScreenshot = (TakesScreenshot) context.getDriver();
 				byte[] attachment = takesScreenshot.getScreenshotAs(OutputType.BYTES);
-				Allure.getLifecycle().addAttachment(title, "image/png", "png", attachment);
+				ScreenshotPipeline.getInstance().attach(title, attachment);
 			} catch (Exception ignore) {}
 		}
 	}
@@ -103,13 +109,20 @@ public class TestNGBase {
         }
     }
 
-	private void closeDriverAfterTest() {
+	private void closeDriverAfterTest(String parallel) {
 		time = (System.currentTimeMillis() - time) / 1000;
 		String driverInfo = getAttribute("driver-info");
+		boolean reset = SessionRecycler.isEnabled(parallel);
 		for (String contextName : TestContext.getAllContextNames()) {
-			logInfo("-CLOSING CONTEXT[" + contextName + "]:" + driverInfo);
-			closeDriver(contextName);
+			if (reset && SessionRecycler.recycle(contextName, testNgContext.get())) {
+				logInfo("-CLOSING CONTEXT[" + contextName + "] (SESSION RESET):" + driverInfo);
+			} else {
+				logInfo("-CLOSING CONTEXT[" + contextName + "]:" + driverInfo);
+				closeDriver(contextName);
+			}
 		}
+		SessionRecycler.testCompleted();
+		UserProvider.release();
 	}
 
 	@BeforeTest(alwaysRun = true)
@@ -124,7 +137,7 @@ public class TestNGBase {
 	public void _afterTest_(ITestContext testNgContext) {
 		String parallel = testNgContext.getSuite().getParallel();
 		if (parallel.equals("tests") || parallel.equals("none")) {
-			closeDriverAfterTest();
+			closeDriverAfterTest(parallel);
 		}
 	}
 
@@ -138,7 +151,7 @@ public class TestNGBase {
 	@AfterMethod(alwaysRun = true)
 	public void _afterMethod_(ITestContext testNgContext) {
 		if (testNgContext.getSuite().getParallel().equals("methods")) {
-			closeDriverAfterTest();
+			closeDriverAfterTest("methods");
 		}
 	}
 
@@ -154,7 +167,7 @@ public class TestNGBase {
 	public void _afterClass_(ITestContext testNgContext) {
 		String parallel = testNgContext.getSuite().getParallel();
 		if (parallel.equals("classes") || parallel.equals("instances")) {
-			closeDriverAfterTest();
+			closeDriverAfterTest(parallel);
 		}
 	}
 
@@ -0,0 +1,93 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.WebDriver;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static com.braimanm.uitaf.support.DriverPoolTest.properties;
+import static org.testng.Assert.*;
+
+/**
+ * Runs {@link DriverLimiter} with a limit of one driver, so every second driver has to wait for a slot.
+ */
+public class DriverLimiterTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterMethod(alwaysRun = true)
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void slotIsGivenBackWhenDriverIsQuit() throws Exception {
+        DriverLimiter limiter = limiter(() -> false);
+        WebDriver first = limiter.open("key", DriverPoolTest.FakeDriver::new);
+        Future<WebDriver> second = executor.submit(() -> limiter.open("key", DriverPoolTest.FakeDriver::new));
+        assertThrows(TimeoutException.class, () -> second.get(300, TimeUnit.MILLISECONDS));
+        first.quit();
+        assertEquals(((DriverPoolTest.FakeDriver) DriverSession.unwrap(first)).quits.get(), 1);
+        assertNotNull(second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void idleDriverIsReclaimedWhenNoSlotIsFree() {
+        AtomicReference<WebDriver> idle = new AtomicReference<>();
+        AtomicInteger reclaims = new AtomicInteger();
+        DriverLimiter limiter = limiter(() -> {
+            reclaims.incrementAndGet();
+            WebDriver driver = idle.getAndSet(null);
+            if (driver == null) return false;
+            driver.quit();
+            return true;
+        });
+        idle.set(limiter.open("pooled", DriverPoolTest.FakeDriver::new));
+        long started = System.currentTimeMillis();
+        assertNotNull(limiter.open("other", DriverPoolTest.FakeDriver::new));
+        assertTrue(System.currentTimeMillis() - started < 1000);
+        assertEquals(reclaims.get(), 1);
+    }
+
+    @Test
+    public void openFailsWhenNoSlotBecomesFree() {
+        AtomicInteger reclaims = new AtomicInteger();
+        DriverLimiter limiter = limiter(() -> reclaims.incrementAndGet() < 0);
+        limiter.open("key", DriverPoolTest.FakeDriver::new);
+        long started = System.currentTimeMillis();
+        RuntimeException e = expectThrows(RuntimeException.class, () -> limiter.open("key", DriverPoolTest.FakeDriver::new));
+        assertTrue(e.getMessage().startsWith("No WebDriver slot became available"), e.getMessage());
+        assertTrue(System.currentTimeMillis() - started >= 900);
+        assertTrue(reclaims.get() > 0);
+    }
+
+    @Test
+    public void failedStartGivesBackSlot() {
+        DriverLimiter limiter = limiter(() -> false);
+        assertThrows(IllegalStateException.class, () -> limiter.open("key", () -> {
+            throw new IllegalStateException("Browser did not start");
+        }));
+        assertNotNull(limiter.open("key", DriverPoolTest.FakeDriver::new));
+    }
+
+    private static DriverLimiter limiter(BooleanSupplier reclaim) {
+        return new DriverLimiter(properties("webdriver.max.active", "1", "webdriver.max.active.timeout", "1"), reclaim);
+    }
+}
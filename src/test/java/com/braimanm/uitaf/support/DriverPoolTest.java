@@ -0,0 +1,226 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * Runs {@link DriverPool} with stand-in drivers which count how many times they were quit.
+ */
+public class DriverPoolTest {
+    private DriverPool pool;
+
+    @AfterMethod(alwaysRun = true)
+    public void shutdownPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    @Test
+    public void releasedDriverIsReused() {
+        TestProperties props = properties("webdriver.pool.size", "2");
+        pool = new DriverPool(props, p -> new FakeDriver());
+        WebDriver first = pool.borrow(props);
+        first.quit();
+        first.quit();
+        assertEquals(pool.getIdleCount(), 1);
+        WebDriver second = pool.borrow(props);
+        assertSame(DriverSession.unwrap(second), DriverSession.unwrap(first));
+        assertEquals(((FakeDriver) DriverSession.unwrap(second)).quits.get(), 0);
+        assertEquals(pool.getHits(), 1);
+        assertEquals(pool.getMisses(), 1);
+        //The proxy of the previous borrow can not return the driver again
+        first.quit();
+        assertEquals(pool.getIdleCount(), 0);
+    }
+
+    @Test
+    public void driverIsRecycledAfterMaxUses() {
+        TestProperties props = properties("webdriver.pool.size", "2", "webdriver.pool.max.uses", "2");
+        pool = new DriverPool(props, p -> new FakeDriver());
+        WebDriver first = pool.borrow(props);
+        FakeDriver driver = (FakeDriver) DriverSession.unwrap(first);
+        first.quit();
+        pool.borrow(props).quit();
+        assertEquals(driver.quits.get(), 1);
+        assertEquals(pool.getRecycled(), 1);
+        assertEquals(pool.getIdleCount(), 0);
+        assertNotSame(DriverSession.unwrap(pool.borrow(props)), driver);
+        assertEquals(pool.getMisses(), 2);
+    }
+
+    @Test
+    public void driverWhichCanNotBeResetIsQuit() {
+        TestProperties props = properties("webdriver.pool.size", "2");
+        FakeDriver driver = new FakeDriver();
+        driver.broken = true;
+        pool = new DriverPool(props, p -> driver);
+        pool.borrow(props).quit();
+        assertEquals(driver.quits.get(), 1);
+        assertEquals(pool.getIdleCount(), 0);
+    }
+
+    @Test
+    public void fullPoolQuitsReleasedDriver() {
+        TestProperties props = properties("webdriver.pool.size", "1");
+        pool = new DriverPool(props, p -> new FakeDriver());
+        WebDriver first = pool.borrow(props);
+        WebDriver second = pool.borrow(props);
+        first.quit();
+        second.quit();
+        assertEquals(pool.getIdleCount(), 1);
+        assertEquals(((FakeDriver) DriverSession.unwrap(first)).quits.get(), 0);
+        assertEquals(((FakeDriver) DriverSession.unwrap(second)).quits.get(), 1);
+    }
+
+    @Test
+    public void oldestIdleDriverIsEvictedFirst() throws InterruptedException {
+        TestProperties props = properties("webdriver.pool.size", "2");
+        pool = new DriverPool(props, p -> new FakeDriver());
+        WebDriver first = pool.borrow(props);
+        WebDriver second = pool.borrow(props);
+        first.quit();
+        TimeUnit.MILLISECONDS.sleep(20);
+        second.quit();
+        assertTrue(pool.evictOldest());
+        assertEquals(((FakeDriver) DriverSession.unwrap(first)).quits.get(), 1);
+        assertEquals(((FakeDriver) DriverSession.unwrap(second)).quits.get(), 0);
+        assertTrue(pool.evictOldest());
+        assertEquals(((FakeDriver) DriverSession.unwrap(second)).quits.get(), 1);
+        assertFalse(pool.evictOldest());
+        assertEquals(pool.getEvicted(), 2);
+    }
+
+    @Test
+    public void idleDriverIsEvictedAfterTimeout() throws InterruptedException {
+        TestProperties props = properties("webdriver.pool.size", "2", "webdriver.pool.idle.timeout", "1");
+        pool = new DriverPool(props, p -> new FakeDriver());
+        WebDriver driver = pool.borrow(props);
+        driver.quit();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        assertEquals(pool.getIdleCount(), 0);
+        assertEquals(((FakeDriver) DriverSession.unwrap(driver)).quits.get(), 1);
+    }
+
+    /**
+     * Loads test properties with the given system properties set.
+     */
+    static TestProperties properties(String... nameValues) {
+        try {
+            for (int i = 0; i < nameValues.length; i += 2) {
+                System.setProperty(nameValues[i], nameValues[i + 1]);
+            }
+            return new TestProperties();
+        } finally {
+            for (int i = 0; i < nameValues.length; i += 2) {
+                System.clearProperty(nameValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Driver with a single window which counts how many times it was quit.
+     */
+    static class FakeDriver implements WebDriver {
+        final AtomicInteger quits = new AtomicInteger();
+        volatile boolean broken;
+
+        @Override
+        public void get(String url) {
+        }
+
+        @Override
+        public String getCurrentUrl() {
+            return "about:blank";
+        }
+
+        @Override
+        public String getTitle() {
+            return "";
+        }
+
+        @Override
+        public List<WebElement> findElements(By by) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public WebElement findElement(By by) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPageSource() {
+            return "";
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void quit() {
+            quits.incrementAndGet();
+        }
+
+        @Override
+        public Set<String> getWindowHandles() {
+            if (broken) throw new IllegalStateException("Browser is gone");
+            return Collections.singleton("main");
+        }
+
+        @Override
+        public String getWindowHandle() {
+            return "main";
+        }
+
+        @Override
+        public TargetLocator switchTo() {
+            return stub(TargetLocator.class);
+        }
+
+        @Override
+        public Navigation navigate() {
+            return stub(Navigation.class);
+        }
+
+        @Override
+        public Options manage() {
+            return stub(Options.class);
+        }
+
+        private static <T> T stub(Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> null));
+        }
+    }
+}
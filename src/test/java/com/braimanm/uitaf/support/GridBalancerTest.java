@@ -0,0 +1,130 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Runs {@link GridBalancer} against stand-in grid endpoints served by the JDK HTTP server.
+ * Endpoint "A" misbehaves and endpoint "B" always creates the session, so the number of requests
+ * which reached "A" tells whether its failures opened the breaker.
+ */
+public class GridBalancerTest {
+    private static final String SESSION = "{\"value\":{\"sessionId\":\"1\",\"capabilities\":{\"browserName\":\"chrome\"}}}";
+    private static final String REJECTED = "{\"value\":{\"error\":\"session not created\",\"message\":\"No matching capabilities\",\"stacktrace\":\"\"}}";
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    static {
+        System.setProperty("webdriver.remote.failure.threshold", "1");
+        System.setProperty("webdriver.remote.failure.cooldown", "300");
+        System.setProperty("webdriver.remote.probe.interval", "0");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServers() {
+        servers.forEach(server -> server.stop(0));
+        servers.clear();
+    }
+
+    @Test
+    public void rejectedSessionDoesNotOpenBreaker() throws IOException {
+        AtomicInteger hits = new AtomicInteger();
+        String a = serve(hits, 500, REJECTED);
+        String b = serve(new AtomicInteger(), 200, SESSION);
+        assertEquals(startSessions(a + "," + b, 4), 2);
+        assertEquals(hits.get(), 2);
+    }
+
+    @Test
+    public void serverErrorOpensBreaker() throws IOException {
+        AtomicInteger hits = new AtomicInteger();
+        String a = serve(hits, 503, "<html>Service Unavailable</html>");
+        String b = serve(new AtomicInteger(), 200, SESSION);
+        assertEquals(startSessions(a + "," + b, 4), 1);
+        assertEquals(hits.get(), 1);
+    }
+
+    @Test
+    public void refusedConnectionOpensBreaker() throws IOException {
+        String a;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            a = "http://localhost:" + socket.getLocalPort() + "/wd/hub";
+        }
+        String b = serve(new AtomicInteger(), 200, SESSION);
+        assertEquals(startSessions(a + "," + b, 4), 1);
+    }
+
+    /**
+     * Starts and quits the sessions one at a time.
+     * @return number of sessions which failed to start
+     */
+    private static int startSessions(String urls, int count) {
+        DefaultDriverProvider provider = new DefaultDriverProvider();
+        int failed = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                WebDriver driver = provider.createRemoteDriver(urls, new DesiredCapabilities("chrome", "", null));
+                driver.quit();
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Serves new session requests with the given response, other requests succeed.
+     */
+    private String serve(AtomicInteger hits, int status, String body) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            if ("POST".equals(exchange.getRequestMethod()) && exchange.getRequestURI().getPath().endsWith("/session")) {
+                hits.incrementAndGet();
+                respond(exchange, status, body);
+            } else {
+                respond(exchange, 200, "{\"value\":null}");
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://localhost:" + server.getAddress().getPort() + "/wd/hub";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().add("Content-Type", body.startsWith("{") ? "application/json" : "text/html");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.testng.Assert.*;
+
+/**
+ * Drives {@link ShardCoordinator} with workers which talk the line protocol over the loopback socket.
+ */
+public class ShardCoordinatorTest {
+
+    @Test
+    public void unitOfStoppedWorkerIsRequeued() throws Exception {
+        try (ShardCoordinator coordinator = new ShardCoordinator(Arrays.asList(item(0), item(1)))) {
+            long started = System.currentTimeMillis();
+            try (Worker worker = new Worker(coordinator)) {
+                assertEquals(worker.send("NEXT 0"), "RUN 0 suite-0.xml");
+            }
+            waitFor(() -> coordinator.getAbandoned().containsKey(0));
+            assertTrue(coordinator.getAbandoned().get(0) >= started);
+            try (Worker worker = new Worker(coordinator)) {
+                assertEquals(worker.send("NEXT 1"), "RUN 0 suite-0.xml");
+                assertEquals(worker.send("DONE 0 0"), "RUN 1 suite-1.xml");
+                assertEquals(worker.send("DONE 1 0"), "STOP");
+            }
+            assertEquals(coordinator.await(Collections.emptyList()), 0);
+            assertFalse(coordinator.getAbandoned().containsKey(1));
+        }
+    }
+
+    @Test
+    public void unitIsGivenUpAfterTwoAttempts() throws Exception {
+        try (ShardCoordinator coordinator = new ShardCoordinator(Collections.singletonList(item(0)))) {
+            try (Worker worker = new Worker(coordinator)) {
+                assertEquals(worker.send("NEXT 0"), "RUN 0 suite-0.xml");
+            }
+            waitFor(() -> coordinator.getAbandoned().containsKey(0));
+            try (Worker worker = new Worker(coordinator)) {
+                assertEquals(worker.send("NEXT 1"), "RUN 0 suite-0.xml");
+            }
+            //The next worker waits until the unit is given up and is stopped
+            try (Worker worker = new Worker(coordinator)) {
+                assertEquals(worker.send("NEXT 2"), "STOP");
+            }
+            assertEquals(coordinator.await(Collections.emptyList()), 1);
+            assertFalse(coordinator.getAbandoned().containsKey(1));
+        }
+    }
+
+    @Test
+    public void statusOfUnitsIsCombined() throws Exception {
+        try (ShardCoordinator coordinator = new ShardCoordinator(Arrays.asList(item(0), item(1)))) {
+            try (Worker worker = new Worker(coordinator)) {
+                assertEquals(worker.send("NEXT 0"), "RUN 0 suite-0.xml");
+                assertEquals(worker.send("DONE 0 1"), "RUN 1 suite-1.xml");
+                assertEquals(worker.send("DONE 1 0"), "STOP");
+            }
+            assertEquals(coordinator.await(Collections.emptyList()), 1);
+            assertTrue(coordinator.getAbandoned().isEmpty());
+        }
+    }
+
+    private static ShardCoordinator.Item item(int id) {
+        return new ShardCoordinator.Item(id, "unit-" + id, Collections.singletonList("suite-" + id + ".xml"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Coordinator did not handle the stopped worker");
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    private static class Worker implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        private Worker(ShardCoordinator coordinator) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.getPort());
+            socket.setSoTimeout(5000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        }
+
+        private String send(String line) throws IOException {
+            out.println(line);
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
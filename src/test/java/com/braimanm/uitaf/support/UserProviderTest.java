@@ -0,0 +1,132 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.support;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * Leases the two user groups of the test environment. File locks are taken by a second JVM
+ * started from {@link #main(String[])}, since a JVM can not lock a file it already locked.
+ */
+public class UserProviderTest {
+    private final List<Process> processes = new ArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private File leaseFolder;
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() throws IOException, InterruptedException {
+        executor.shutdownNow();
+        for (Process process : processes) {
+            process.destroy();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+        processes.clear();
+        if (leaseFolder != null) {
+            FileUtils.deleteDirectory(leaseFolder);
+            leaseFolder = null;
+        }
+    }
+
+    @Test
+    public void leasedGroupIsNotHandedOutAgain() {
+        UserProvider provider = provider(null);
+        UserProvider.Lease first = provider.acquire(0, TimeUnit.SECONDS);
+        UserProvider.Lease second = provider.acquire(0, TimeUnit.SECONDS);
+        assertNotEquals(first.getGroupName(), second.getGroupName());
+        assertEquals(first.getUsers().size(), 2);
+        assertThrows(RuntimeException.class, () -> provider.acquire(0, TimeUnit.SECONDS));
+        first.close();
+        first.close();
+        assertTrue(first.isReleased());
+        assertEquals(provider.acquire(0, TimeUnit.SECONDS).getGroupName(), first.getGroupName());
+        assertThrows(RuntimeException.class, () -> provider.acquire(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void waitingAcquireGetsReleasedGroup() throws Exception {
+        UserProvider provider = provider(null);
+        provider.acquire(0, TimeUnit.SECONDS);
+        UserProvider.Lease held = provider.acquire(0, TimeUnit.SECONDS);
+        Future<UserProvider.Lease> waiting = executor.submit(() -> provider.acquire(5, TimeUnit.SECONDS));
+        assertThrows(TimeoutException.class, () -> waiting.get(300, TimeUnit.MILLISECONDS));
+        held.close();
+        assertEquals(waiting.get(1, TimeUnit.SECONDS).getGroupName(), held.getGroupName());
+    }
+
+    @Test
+    public void groupLockedByAnotherProcessIsSkipped() throws Exception {
+        UserProvider provider = provider(Files.createTempDirectory("uitaf-leases").toFile());
+        assertEquals(lockInOtherProcess("TEST-group1.lock"), "LOCKED");
+        assertEquals(provider.acquire(0, TimeUnit.SECONDS).getGroupName(), "group2");
+        assertThrows(RuntimeException.class, () -> provider.acquire(0, TimeUnit.SECONDS));
+        //The lock is released by the operating system when the process dies
+        processes.get(0).destroy();
+        assertTrue(processes.get(0).waitFor(10, TimeUnit.SECONDS));
+        assertEquals(provider.acquire(5, TimeUnit.SECONDS).getGroupName(), "group1");
+    }
+
+    @Test
+    public void closedLeaseUnlocksGroupFile() throws Exception {
+        UserProvider provider = provider(Files.createTempDirectory("uitaf-leases").toFile());
+        UserProvider.Lease lease = provider.acquire(0, TimeUnit.SECONDS);
+        String file = "TEST-" + lease.getGroupName() + ".lock";
+        assertEquals(lockInOtherProcess(file), "BUSY");
+        lease.close();
+        assertEquals(lockInOtherProcess(file), "LOCKED");
+    }
+
+    private UserProvider provider(File leaseFolder) {
+        this.leaseFolder = leaseFolder;
+        return new UserProvider(EnvironmentsSetup.load("test-environments.xml").getEnvironment("TEST"), leaseFolder);
+    }
+
+    /**
+     * Starts a JVM which tries to lock the given file of the lease folder and keeps the lock until it is stopped.
+     * @return LOCKED if the file was locked, BUSY if it is locked by another process
+     */
+    private String lockInOtherProcess(String name) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                UserProviderTest.class.getName(), new File(leaseFolder, name).getAbsolutePath())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        processes.add(process);
+        BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        return in.readLine();
+    }
+
+    public static void main(String[] args) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            System.out.println((channel.tryLock() != null) ? "LOCKED" : "BUSY");
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                //Keeps the lock until the test stops the process
+            }
+        }
+    }
+}
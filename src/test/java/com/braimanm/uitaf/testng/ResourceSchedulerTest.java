@@ -0,0 +1,158 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+
+package com.braimanm.uitaf.testng;
+
+import org.testng.IInvokedMethod;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.testng.internal.ConstructorOrMethod;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+import static org.testng.Assert.*;
+
+/**
+ * Invokes the {@link ResourceScheduler} listener callbacks for the annotated methods of {@link Tests}
+ * from several threads and checks which of the invocations are let through.
+ */
+public class ResourceSchedulerTest {
+    private final ResourceScheduler scheduler = new ResourceScheduler();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterMethod(alwaysRun = true)
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void exclusiveClaimWaitsForHolder() throws Exception {
+        ITestResult holder = start("exclusive").get(1, TimeUnit.SECONDS);
+        Future<ITestResult> waiting = start("exclusive");
+        assertBlocked(waiting);
+        finish("exclusive", holder);
+        assertNotNull(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sharedClaimsRunTogether() throws Exception {
+        start("shared").get(1, TimeUnit.SECONDS);
+        assertNotNull(start("shared").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void waitingExclusiveClaimIsServedBeforeNewSharedClaims() throws Exception {
+        ITestResult reader = start("shared").get(1, TimeUnit.SECONDS);
+        Future<ITestResult> writer = start("exclusive");
+        assertBlocked(writer);
+        Future<ITestResult> lateReader = start("shared");
+        assertBlocked(lateReader);
+        finish("shared", reader);
+        ITestResult written = writer.get(1, TimeUnit.SECONDS);
+        assertBlocked(lateReader);
+        finish("exclusive", written);
+        assertNotNull(lateReader.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWithoutResourcesIsNotDelayed() throws Exception {
+        start("exclusive").get(1, TimeUnit.SECONDS);
+        start("shared");
+        assertNotNull(start("free").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void otherResourceIsNotDelayed() throws Exception {
+        start("exclusive").get(1, TimeUnit.SECONDS);
+        assertNotNull(start("otherExclusive").get(1, TimeUnit.SECONDS));
+    }
+
+    private static void assertBlocked(Future<?> invocation) {
+        assertThrows(TimeoutException.class, () -> invocation.get(300, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Calls {@code beforeInvocation} for the given method of {@link Tests} on another thread.
+     * @return the result of the invocation, available once the method is let through
+     */
+    private Future<ITestResult> start(String name) {
+        return executor.submit(() -> {
+            ITestResult result = result();
+            scheduler.beforeInvocation(invoked(name), result);
+            return result;
+        });
+    }
+
+    private void finish(String name, ITestResult result) throws NoSuchMethodException {
+        scheduler.afterInvocation(invoked(name), result);
+    }
+
+    private static IInvokedMethod invoked(String name) throws NoSuchMethodException {
+        ConstructorOrMethod method = new ConstructorOrMethod(Tests.class.getMethod(name));
+        ITestNGMethod testMethod = stub(ITestNGMethod.class, (m, args) -> {
+            switch (m) {
+                case "getConstructorOrMethod": return method;
+                case "getRealClass": return Tests.class;
+                default: return null;
+            }
+        });
+        return stub(IInvokedMethod.class, (m, args) -> {
+            switch (m) {
+                case "isTestMethod": return true;
+                case "getTestMethod": return testMethod;
+                default: return null;
+            }
+        });
+    }
+
+    private static ITestResult result() {
+        Map<String, Object> attributes = new HashMap<>();
+        return stub(ITestResult.class, (m, args) -> {
+            switch (m) {
+                case "setAttribute": return attributes.put((String) args[0], args[1]);
+                case "getAttribute": return attributes.get(args[0]);
+                case "removeAttribute": return attributes.remove(args[0]);
+                default: return null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, BiFunction<String, Object[], Object> answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> answer.apply(method.getName(), args)));
+    }
+
+    public static class Tests {
+        @TestResources(exclusive = "database")
+        public void exclusive() {
+        }
+
+        @TestResources(shared = "database")
+        public void shared() {
+        }
+
+        @TestResources(exclusive = "printer")
+        public void otherExclusive() {
+        }
+
+        public void free() {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import com.braimanm.uitaf.support.EnvironmentsSetup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading of the environments file and lookups of environments, users and custom properties.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnvironmentsSetupBenchmark {
+    private static final String RESOURCE = "benchmark-environments.xml";
+    private EnvironmentsSetup setup;
+    private EnvironmentsSetup.Environment environment;
+
+    @Setup
+    public void setup() {
+        setup = new EnvironmentsSetup().fromResource(RESOURCE);
+        environment = setup.getEnvironment("PROD");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public EnvironmentsSetup load() {
+        return new EnvironmentsSetup().fromResource(RESOURCE);
+    }
+
+    @Benchmark
+    public EnvironmentsSetup loadCached() {
+        return EnvironmentsSetup.load(RESOURCE);
+    }
+
+    @Benchmark
+    public EnvironmentsSetup.Environment getEnvironment() {
+        return setup.getEnvironment("prod");
+    }
+
+    @Benchmark
+    public EnvironmentsSetup.User getUser() {
+        return environment.getUser("group15.user");
+    }
+
+    @Benchmark
+    public String getEnvironmentCustom() {
+        return environment.getCustom("property9");
+    }
+
+    @Benchmark
+    public String getEnvironmentCustomFromMap() {
+        return environment.getCustomAsMap().get("property9");
+    }
+
+    @Benchmark
+    public String getGlobalCustom() {
+        return setup.getCustom("global9");
+    }
+
+    @Benchmark
+    public String getUrl() {
+        return environment.getUrl();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import com.braimanm.uitaf.testng.AllureTestNGListener;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.AllureResultsWriter;
+import io.qameta.allure.model.Status;
+import io.qameta.allure.model.TestResult;
+import io.qameta.allure.model.TestResultContainer;
+import io.qameta.allure.testng.TestInstanceParameter;
+import org.openjdk.jmh.annotations.*;
+import org.testng.ITestClass;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+import org.testng.annotations.Parameters;
+import org.testng.internal.ConstructorOrMethod;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Allure listener overhead of starting and stopping a parameterized test case.
+ * Results are discarded by an in-memory writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListenerBenchmark {
+    private BenchmarkListener listener;
+    private ITestContext context;
+    private ITestNGMethod method;
+    private ITestClass testClass;
+    private String containerUuid;
+    private Object[] parameters;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        AllureLifecycle lifecycle = new AllureLifecycle(new DiscardingResultsWriter());
+        listener = new BenchmarkListener(lifecycle);
+
+        XmlSuite suite = new XmlSuite();
+        suite.setName("Benchmark Suite");
+        Map<String, String> suiteParameters = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            suiteParameters.put("suite-parameter-" + i, "value-" + i);
+        }
+        suite.setParameters(suiteParameters);
+        XmlTest xmlTest = new XmlTest(suite);
+        xmlTest.setName("Benchmark Test");
+        xmlTest.addParameter("test-parameter", "value");
+
+        Map<String, Object> classAnswers = new HashMap<>();
+        classAnswers.put("getRealClass", SampleTest.class);
+        classAnswers.put("getName", SampleTest.class.getName());
+        classAnswers.put("getXmlTest", xmlTest);
+        testClass = Stubs.proxy(ITestClass.class, classAnswers);
+
+        Map<String, Object> methodAnswers = new HashMap<>();
+        methodAnswers.put("getTestClass", testClass);
+        methodAnswers.put("getRealClass", SampleTest.class);
+        methodAnswers.put("getMethodName", "sampleTest");
+        methodAnswers.put("getInstance", new SampleTest());
+        methodAnswers.put("getConstructorOrMethod", new ConstructorOrMethod(
+                SampleTest.class.getMethod("sampleTest", String.class, int.class, ITestContext.class, String.class)));
+        methodAnswers.put("isTest", true);
+        method = Stubs.proxy(ITestNGMethod.class, methodAnswers);
+
+        Map<String, Object> contextAnswers = new HashMap<>();
+        contextAnswers.put("getCurrentXmlTest", xmlTest);
+        contextAnswers.put("getName", xmlTest.getName());
+        context = Stubs.proxy(ITestContext.class, contextAnswers);
+        parameters = new Object[]{"first value", 42, context, null};
+
+        containerUuid = UUID.randomUUID().toString();
+        lifecycle.startTestContainer(new TestResultContainer().setUuid(containerUuid).setName("Benchmark"));
+    }
+
+    @Benchmark
+    public String startStopTestCase() {
+        String uuid = UUID.randomUUID().toString();
+        listener.start(context, method, testClass, parameters, containerUuid, uuid);
+        listener.stop(uuid);
+        return uuid;
+    }
+
+    /**
+     * Exposes protected test case life cycle methods of the listener.
+     */
+    static class BenchmarkListener extends AllureTestNGListener {
+
+        BenchmarkListener(AllureLifecycle lifecycle) {
+            super(lifecycle);
+        }
+
+        void start(ITestContext context, ITestNGMethod method, ITestClass testClass, Object[] parameters,
+                   String parentUuid, String uuid) {
+            startTestCase(context, method, testClass, parameters, parentUuid, uuid);
+        }
+
+        void stop(String uuid) {
+            stopTestCase(uuid, null, Status.PASSED);
+        }
+    }
+
+    static class DiscardingResultsWriter implements AllureResultsWriter {
+
+        @Override
+        public void write(TestResult testResult) {
+        }
+
+        @Override
+        public void write(TestResultContainer testResultContainer) {
+        }
+
+        @Override
+        public void write(String source, InputStream attachment) {
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public static class SampleTest {
+        @TestInstanceParameter("Browser")
+        private final String browser = "CHROME";
+        @TestInstanceParameter
+        private final int retries = 2;
+
+        @Parameters({"name", "count"})
+        public void sampleTest(String name, int count, ITestContext context, String note) {
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import com.braimanm.ui.auto.components.WebComponent;
+import com.braimanm.ui.auto.pagecomponent.PageComponent;
+import com.braimanm.ui.auto.pagecomponent.SkipAutoFill;
+import com.braimanm.uitaf.support.FieldName;
+import com.braimanm.uitaf.support.PageObjectModel;
+import com.braimanm.uitaf.support.TestContext;
+import org.openjdk.jmh.annotations.*;
+import org.openqa.selenium.support.FindBy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures field enumeration of {@link PageObjectModel#autoFillPage}. Setting element values is
+ * skipped, so only the framework part of the page population is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PageObjectModelBenchmark {
+    private BenchmarkPage page;
+
+    @Setup
+    public void setup() {
+        TestContext.init(TestContext.DEFAULT);
+        page = new BenchmarkPage();
+        page.initPage(TestContext.getContext());
+    }
+
+    @TearDown
+    public void tearDown() {
+        TestContext.removeContext();
+    }
+
+    @Benchmark
+    public BenchmarkPage autoFill() {
+        page.fill();
+        return page;
+    }
+
+    @SuppressWarnings("unused")
+    public static class BenchmarkPage extends PageObjectModel {
+        @FindBy(id = "firstName")
+        WebComponent firstName;
+        @FindBy(id = "lastName")
+        WebComponent lastName;
+        @FieldName("E-mail Address")
+        @FindBy(id = "email")
+        WebComponent email;
+        @FindBy(id = "phone")
+        WebComponent phoneNumber;
+        @FindBy(id = "street")
+        WebComponent streetAddress;
+        @FindBy(id = "city")
+        WebComponent city;
+        @FindBy(id = "province")
+        WebComponent province;
+        @FindBy(id = "postalCode")
+        WebComponent postalCode;
+        @FindBy(id = "country")
+        WebComponent country;
+        @SkipAutoFill
+        @FindBy(id = "submit")
+        WebComponent submit;
+
+        void fill() {
+            autoFillPage(false);
+        }
+
+        @Override
+        protected void setElementValue(PageComponent component, boolean validate) {
+            //No browser interaction, only the field enumeration is measured
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import com.braimanm.uitaf.support.DriverProvider;
+import com.braimanm.uitaf.support.TestProperties;
+import org.openqa.selenium.WebDriver;
+
+public class StubDriverProvider implements DriverProvider {
+
+    @Override
+    public WebDriver getNewDriverInstance(TestProperties properties) {
+        return new StubWebDriver();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import org.openqa.selenium.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * WebDriver which answers every command immediately without a browser.
+ */
+public class StubWebDriver implements WebDriver, JavascriptExecutor, TakesScreenshot {
+    private static final byte[] SCREENSHOT = new byte[0];
+    private final WebElement element = Stubs.proxy(WebElement.class, Collections.emptyMap());
+    private final Options options = Stubs.proxy(Options.class, Collections.emptyMap());
+    private final Navigation navigation = Stubs.proxy(Navigation.class, Collections.emptyMap());
+    private final TargetLocator targetLocator = Stubs.proxy(TargetLocator.class,
+            Collections.singletonMap("window", this));
+    private String url = "about:blank";
+
+    @Override
+    public void get(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String getCurrentUrl() {
+        return url;
+    }
+
+    @Override
+    public String getTitle() {
+        return "";
+    }
+
+    @Override
+    public List<WebElement> findElements(By by) {
+        return Collections.singletonList(element);
+    }
+
+    @Override
+    public WebElement findElement(By by) {
+        return element;
+    }
+
+    @Override
+    public String getPageSource() {
+        return "<html></html>";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void quit() {
+    }
+
+    @Override
+    public Set<String> getWindowHandles() {
+        return Collections.singleton("stub");
+    }
+
+    @Override
+    public String getWindowHandle() {
+        return "stub";
+    }
+
+    @Override
+    public TargetLocator switchTo() {
+        return targetLocator;
+    }
+
+    @Override
+    public Navigation navigate() {
+        return navigation;
+    }
+
+    @Override
+    public Options manage() {
+        return options;
+    }
+
+    @Override
+    public Object executeScript(String script, Object... args) {
+        return null;
+    }
+
+    @Override
+    public Object executeAsyncScript(String script, Object... args) {
+        return null;
+    }
+
+    @Override
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        return target.convertFromPngBytes(SCREENSHOT);
+    }
+
+    @Override
+    public String toString() {
+        return "StubWebDriver";
+    }
+}
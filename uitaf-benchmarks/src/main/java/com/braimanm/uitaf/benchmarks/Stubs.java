@@ -0,0 +1,74 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates interface implementations which answer configured values by method name
+ * and default values for everything else.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    static <T> T proxy(Class<T> type, Map<String, Object> answers) {
+        Map<String, Object> values = new HashMap<>(answers);
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Stub" + type.getSimpleName();
+                default:
+                    if (values.containsKey(method.getName())) return values.get(method.getName());
+                    if (method.getName().equals("setAttribute")) {
+                        values.put("attribute:" + args[0], args[1]);
+                        return null;
+                    }
+                    if (method.getName().equals("getAttribute") && args != null && args.length == 1) {
+                        return values.get("attribute:" + args[0]);
+                    }
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        return type.cast(stub);
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        if (type == String.class) return "";
+        if (type == List.class) return Collections.emptyList();
+        if (type == Set.class) return Collections.emptySet();
+        if (type == Map.class) return Collections.emptyMap();
+        if (type.isArray()) return java.lang.reflect.Array.newInstance(type.getComponentType(), 0);
+        if (type.isInterface()) return proxy(type, Collections.emptyMap());
+        return null;
+    }
+}
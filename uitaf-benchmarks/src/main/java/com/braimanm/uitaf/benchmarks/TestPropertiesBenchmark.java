@@ -0,0 +1,52 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import com.braimanm.uitaf.support.TestProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading of test properties and the per-thread copy of the shared snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TestPropertiesBenchmark {
+    private TestProperties props;
+
+    @Setup
+    public void setup() {
+        props = new TestProperties();
+    }
+
+    @Benchmark
+    public TestProperties construct() {
+        return new TestProperties();
+    }
+
+    @Benchmark
+    public TestProperties copy() {
+        return props.copy();
+    }
+
+    @Benchmark
+    public Object getAsParameters() {
+        return props.getAsParameters();
+    }
+}
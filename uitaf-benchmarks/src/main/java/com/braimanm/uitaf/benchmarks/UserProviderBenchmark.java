@@ -0,0 +1,58 @@
+/*
+Copyright 2010-2024 Michael Braiman braimanm@gmail.com
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+       http://www.apache.org/licenses/LICENSE-2.0
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.braimanm.uitaf.benchmarks;
+
+import com.braimanm.uitaf.support.EnvironmentsSetup;
+import com.braimanm.uitaf.support.UserProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures user lookups by concurrent test threads. The benchmark environment defines
+ * 16 user groups, so up to 16 threads can run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class UserProviderBenchmark {
+    private UserProvider provider;
+
+    @Setup
+    public void setup() {
+        provider = UserProvider.getInstance();
+    }
+
+    @Benchmark
+    public List<EnvironmentsSetup.User> getUsers() {
+        return provider.getUsers();
+    }
+
+    @Benchmark
+    public EnvironmentsSetup.User getUser() {
+        return provider.getUser("admin");
+    }
+
+    @Benchmark
+    public String acquireRelease() {
+        try (UserProvider.Lease lease = provider.acquire(1, TimeUnit.SECONDS)) {
+            return lease.getGroupName();
+        }
+    }
+}